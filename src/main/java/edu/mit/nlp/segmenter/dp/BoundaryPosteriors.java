@@ -0,0 +1,168 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * BoundaryPosteriors computes the posterior probability of a segment 
+ * boundary after each sentence of a document, over all segmentations into a
+ * given number of segments, each weighted by its likelihood. It runs the
+ * forward–backward algorithm over the same segment scores used by
+ * {@link DPKernel}, replacing the maximization in each cell with a sum in
+ * log space, so it costs about twice as much as the dynamic program.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class BoundaryPosteriors {
+
+    /**
+     * The number of DP cells to sum over in one fork/join task.
+     */
+    private static final int CELL_GRAIN = 256;
+
+    /**
+     * Forward scores, indexed by [numSegments][end]: the log of the summed 
+     * likelihoods of the segmentations of the first end sentences into
+     * numSegments segments.
+     */
+    private final double[][] forward;
+
+    /**
+     * Backward scores, indexed by [numSegments][start]: the log of the 
+     * summed likelihoods of the segmentations of the sentences from start to
+     * the end of the document into the remaining segments, after numSegments
+     * segments.
+     */
+    private final double[][] backward;
+
+    private final int numSegments;
+    private final int sentenceCount;
+
+    /**
+     * Run the forward–backward algorithm.
+     *
+     * @param segLLs segment scores of the document
+     * @param numSegments the number of segments
+     * @param pool a pool to split each layer across, or null to run on the
+     * calling thread
+     */
+    BoundaryPosteriors(SegmentScores segLLs, int numSegments, ForkJoinPool pool) {
+        checkArgument(numSegments > 0, "number of segments must be > 0; was %s", numSegments);
+        final int T = segLLs.doc.sentenceCount;
+        final int K = numSegments;
+        this.numSegments = K;
+        this.sentenceCount = T;
+        this.forward = new double[K+1][T+1];
+        this.backward = new double[K+1][T+1];
+        for (int i = 0; i <= K; i++) {
+            Arrays.fill(this.forward[i], Double.NEGATIVE_INFINITY);
+            Arrays.fill(this.backward[i], Double.NEGATIVE_INFINITY);
+        }
+        this.forward[0][0] = 0;
+        this.backward[K][T] = 0;
+
+        for (int i = 1; i <= K; i++) {
+            final double[] from = this.forward[i-1];
+            final double[] to = this.forward[i];
+            final int layer = i;
+            // The segments after this one need at least one sentence each.
+            run(pool, i, T - (K-i) + 1, (first, last) -> {
+                double[] terms = new double[segLLs.maxLength];
+                for (int end = first; end < last; end++) {
+                    int n = 0;
+                    for (int start = Math.max(layer-1, end-segLLs.maxLength); start < end; start++) {
+                        terms[n++] = from[start] + segLLs.get(start, end-start);
+                    }
+                    to[end] = logSumExp(terms, n);
+                }
+            });
+        }
+        for (int i = K-1; i >= 0; i--) {
+            final double[] from = this.backward[i+1];
+            final double[] to = this.backward[i];
+            final int layer = i;
+            // The segments before this one need at least one sentence each.
+            run(pool, i, T - (K-i) + 1, (first, last) -> {
+                double[] terms = new double[segLLs.maxLength];
+                for (int start = first; start < last; start++) {
+                    int n = 0;
+                    int lastEnd = Math.min(T - (K-layer-1), start + segLLs.rowLength(start));
+                    for (int end = start+1; end <= lastEnd; end++) {
+                        terms[n++] = segLLs.get(start, end-start) + from[end];
+                    }
+                    to[start] = logSumExp(terms, n);
+                }
+            });
+        }
+    }
+
+    private static void run(ForkJoinPool pool, int from, int to, RangeTask.Action action) {
+        if (pool != null) {
+            pool.invoke(new RangeTask(from, to, CELL_GRAIN, action));
+        } else {
+            action.apply(from, to);
+        }
+    }
+
+    /**
+     * Compute log(Σ exp(x)) over the first n values, without overflow, in
+     * two simple passes: one for the maximum, and one for the sum of
+     * exponentials scaled by it.
+     *
+     * @param xs values
+     * @param n the number of values to use
+     * @return the log of the sum of their exponentials
+     */
+    static double logSumExp(double[] xs, int n) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, xs[i]);
+        }
+        if (max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += Math.exp(xs[i] - max);
+        }
+        return max + Math.log(sum);
+    }
+
+    /**
+     * @return the log of the summed likelihoods of all the segmentations of
+     * the document into the given number of segments
+     */
+    double logPartition() {
+        return this.forward[this.numSegments][this.sentenceCount];
+    }
+
+    /**
+     * Compute the probability of a boundary after each sentence: the sum
+     * over the segments that could end there of the probability that they
+     * do.
+     *
+     * @return the probability of a boundary after each sentence, indexed by
+     * sentence, the last of which is always 1; or null if the document has
+     * no segmentations into the given number of segments
+     */
+    double[] probabilities() {
+        final int T = this.sentenceCount;
+        double Z = logPartition();
+        if (Z == Double.NEGATIVE_INFINITY) {
+            return null;
+        }
+        double[] probabilities = new double[T];
+        for (int end = 1; end < T; end++) {
+            double p = 0;
+            for (int i = 1; i < this.numSegments; i++) {
+                p += Math.exp(this.forward[i][end] + this.backward[i][end] - Z);
+            }
+            probabilities[end-1] = Math.min(1, p);
+        }
+        if (T > 0) {
+            probabilities[T-1] = 1;
+        }
+        return probabilities;
+    }
+}
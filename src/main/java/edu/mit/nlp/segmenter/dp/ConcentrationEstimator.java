@@ -0,0 +1,57 @@
+package edu.mit.nlp.segmenter.dp;
+
+/**
+ * A ConcentrationEstimator finds the concentration parameter α that
+ * maximizes the log-likelihood of a fixed segmentation. It is one step of
+ * the hard EM procedure in {@link DPSeg#estimateConcentrationParameter}.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public interface ConcentrationEstimator {
+
+    /**
+     * Maximize an objective function of the concentration parameter.
+     *
+     * @param objective the function to maximize
+     * @param α the starting concentration parameter
+     * @return the estimate
+     */
+    Estimate maximize(Objective objective, double α);
+
+    /**
+     * The log-likelihood of a segmentation as a function of the
+     * concentration parameter α, with its first and second derivatives
+     * with respect to ln α.
+     */
+    public interface Objective {
+
+        double value(double α);
+
+        double gradient(double α);
+
+        double curvature(double α);
+    }
+
+    /**
+     * A maximizing concentration parameter, the value of the objective
+     * there, and the number of iterations it took to find.
+     */
+    public static final class Estimate {
+
+        public final double α;
+        public final double value;
+        public final int iterations;
+
+        public Estimate(double α, double value, int iterations) {
+            this.α = α;
+            this.value = value;
+            this.iterations = iterations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("α=%s (log-likelihood %s, %d iterations)",
+                    this.α, this.value, this.iterations);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package edu.mit.nlp.segmenter.dp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DCMObjective is the total DCM log-likelihood of a fixed set of segments as
+ * a function of the concentration parameter α, for estimating α. The
+ * log-likelihood of a segment depends only on α, the vocabulary size K, the
+ * number of tokens N and the histogram of its word counts, so the segments
+ * are summarized once by the total number of words having each count c and
+ * the number of segments having each (K, N). The value and gradient at any α
+ * are then computed together in one pass over those summaries, along with
+ * the second derivative, and the result for the most recent α is kept, so
+ * asking for the value and then the derivatives at the same point costs one
+ * evaluation.
+ *
+ * <p>Not safe for use by multiple threads.</p>
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class DCMObjective implements ConcentrationEstimator.Objective {
+
+    /**
+     * Word counts c, and the number of (word, segment) pairs with each count.
+     */
+    private final int[] counts;
+    private final long[] countFrequencies;
+
+    /**
+     * Distinct (K, N) pairs, and the number of segments with each pair.
+     */
+    private final int[] Ks;
+    private final int[] Ns;
+    private final long[] lengthFrequencies;
+
+    private double α = Double.NaN;
+    private double value;
+    private double gradient;
+    private double curvature;
+
+    private DCMObjective(Builder builder) {
+        this.counts = new int[builder.countFrequencies.size()];
+        this.countFrequencies = new long[this.counts.length];
+        int i = 0;
+        for (Map.Entry<Integer,Long> e : builder.countFrequencies.entrySet()) {
+            this.counts[i] = e.getKey();
+            this.countFrequencies[i] = e.getValue();
+            i++;
+        }
+        this.Ks = new int[builder.lengthFrequencies.size()];
+        this.Ns = new int[this.Ks.length];
+        this.lengthFrequencies = new long[this.Ks.length];
+        i = 0;
+        for (Map.Entry<Long,Long> e : builder.lengthFrequencies.entrySet()) {
+            this.Ks[i] = (int) (e.getKey() >>> 32);
+            this.Ns[i] = (int) (long) e.getKey();
+            this.lengthFrequencies[i] = e.getValue();
+            i++;
+        }
+    }
+
+    @Override
+    public double value(double α) {
+        evaluate(α);
+        return this.value;
+    }
+
+    @Override
+    public double gradient(double α) {
+        evaluate(α);
+        return this.gradient;
+    }
+
+    @Override
+    public double curvature(double α) {
+        evaluate(α);
+        return this.curvature;
+    }
+
+    private void evaluate(double α) {
+        if (α == this.α) {
+            return;
+        }
+        double lnΓα = DirichletMultinomial.lnΓ(α);
+        double ψα = DirichletMultinomial.ψ(α);
+        double ψ1α = DirichletMultinomial.ψ1(α);
+        // Derivatives with respect to α; converted to ln α below.
+        double value = 0;
+        double first = 0;
+        double second = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            double x = α + this.counts[i];
+            value += this.countFrequencies[i] * (DirichletMultinomial.lnΓ(x) - lnΓα);
+            first += this.countFrequencies[i] * (DirichletMultinomial.ψ(x) - ψα);
+            second += this.countFrequencies[i] * (DirichletMultinomial.ψ1(x) - ψ1α);
+        }
+        for (int i = 0; i < this.Ks.length; i++) {
+            int K = this.Ks[i];
+            double A = K * α;
+            double x = A + this.Ns[i];
+            value -= this.lengthFrequencies[i] 
+                    * (DirichletMultinomial.lnΓ(x) - DirichletMultinomial.lnΓ(A));
+            first += this.lengthFrequencies[i] * K 
+                    * (DirichletMultinomial.ψ(A) - DirichletMultinomial.ψ(x));
+            second += this.lengthFrequencies[i] * K * K
+                    * (DirichletMultinomial.ψ1(A) - DirichletMultinomial.ψ1(x));
+        }
+        this.α = α;
+        this.value = value;
+        this.gradient = α * first;
+        this.curvature = α * first + α * α * second;
+    }
+
+    /**
+     * Accumulates segment summaries for a {@link DCMObjective}.
+     */
+    static class Builder {
+
+        private final Map<Integer,Long> countFrequencies = new HashMap<>();
+        private final Map<Long,Long> lengthFrequencies = new HashMap<>();
+
+        /**
+         * Add a segment with the given vocabulary size and number of tokens.
+         * Its word counts must be added with {@link #addCount(int, int)}.
+         *
+         * @param K vocabulary size
+         * @param N number of tokens
+         * @return this builder
+         */
+        Builder addSegment(int K, int N) {
+            this.lengthFrequencies.merge(((long) K << 32) | N, 1L, Long::sum);
+            return this;
+        }
+
+        /**
+         * Add words having the given count in some segment.
+         *
+         * @param count a word count
+         * @param frequency the number of words with that count
+         * @return this builder
+         */
+        Builder addCount(int count, int frequency) {
+            this.countFrequencies.merge(count, (long) frequency, Long::sum);
+            return this;
+        }
+
+        /**
+         * Add a segment, given its sparse word counts.
+         *
+         * @param counts sparse word counts of the segment
+         * @return this builder
+         */
+        Builder add(SparseCounts counts) {
+            addSegment(counts.K, counts.N);
+            for (int count : counts.counts) {
+                addCount(count, 1);
+            }
+            return this;
+        }
+
+        /**
+         * Add all the segments summarized by another builder.
+         *
+         * @param other another builder
+         * @return this builder
+         */
+        Builder addAll(Builder other) {
+            other.countFrequencies.forEach((count, frequency) -> 
+                    this.countFrequencies.merge(count, frequency, Long::sum));
+            other.lengthFrequencies.forEach((length, frequency) -> 
+                    this.lengthFrequencies.merge(length, frequency, Long::sum));
+            return this;
+        }
+
+        DCMObjective build() {
+            return new DCMObjective(this);
+        }
+    }
+}
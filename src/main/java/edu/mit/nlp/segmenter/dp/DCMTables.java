@@ -0,0 +1,48 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * DCMTables holds the lnΓ differences needed to score segments of a document
+ * under the DCM at one concentration parameter α: lnΓ(α+c) − lnΓ(α) for each
+ * word count c, and lnΓ(Kα+n) − lnΓ(Kα) for each segment token count n, for
+ * counts up to a maximum. The tables are built once per α and document and
+ * never modified afterward, so they can be shared by any number of threads.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+final class DCMTables {
+
+    final double α;
+    final int K;
+
+    /**
+     * lnΓ(α+c) − lnΓ(α), indexed by word count c.
+     */
+    final double[] countTerms;
+
+    /**
+     * lnΓ(Kα+n) − lnΓ(Kα), indexed by token count n.
+     */
+    final double[] lengthTerms;
+
+    /**
+     * @param α concentration parameter
+     * @param K the number of categories (vocabulary size)
+     * @param maxN the largest count to be looked up
+     */
+    DCMTables(double α, int K, int maxN) {
+        checkArgument(maxN >= 0, "max count must be >= 0; was %s", maxN);
+        this.α = α;
+        this.K = K;
+        this.countTerms = DirichletMultinomial.lnΓDifferences(α, maxN);
+        this.lengthTerms = DirichletMultinomial.lnΓDifferences(K * α, maxN);
+    }
+
+    /**
+     * @return the largest count that can be looked up
+     */
+    int maxN() {
+        return this.countTerms.length - 1;
+    }
+}
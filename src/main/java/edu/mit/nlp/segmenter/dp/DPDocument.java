@@ -1,31 +1,54 @@
 package edu.mit.nlp.segmenter.dp;
 
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableMap;
 import in.aesh.segment.Segment;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DPDocument stores document statistics and provides methods for efficient
  * inference of the maximum-likelihood segmentation via dynamic programming.
- * 
+ *
  * @author Ryan Shaw <ryanshaw@unc.edu>
  */
 class DPDocument {
 
     /**
-     * A list of all the unique vocabulary (types) in this document.
+     * A list of all the unique vocabulary (types) in this document, in order
+     * of first appearance. The index of a word in this list is its word ID.
      */
     final ImmutableList<String> vocabulary;
 
     /**
-     * A list of cumulative word counts, one for each sentence in the document.
-     * Each item in the list is a {@link com.google.common.collect.Multiset}
-     * of word usage counts through that sentence. So, the first item is word 
-     * usage counts for only the first sentence, and the last item is word 
-     * usage counts for the entire document.
+     * A map from each word (type) in the vocabulary to its word ID.
      */
-    final ImmutableList<ImmutableMultiset<String>> cumulativeWordUsageCounts;
+    private final ImmutableMap<String,Integer> wordIDs;
+
+    /**
+     * Cumulative word usage counts, indexed by sentence and then by word ID.
+     * Row <i>t</i> holds the counts of each word in sentences [0, <i>t</i>),
+     * so the first row is empty and the last row is word usage counts for the
+     * entire document. Because word IDs are assigned in order of first
+     * appearance, row <i>t</i> only needs to be as long as the vocabulary
+     * seen so far; words with IDs beyond the end of a row have count 0.
+     */
+    final int[][] cumulativeCounts;
+
+    /**
+     * The word IDs of every token in the document, in document order.
+     */
+    final int[] tokens;
+
+    /**
+     * The offset into {@link #tokens} of the first token of each sentence,
+     * plus a final entry for the end of the document, so that the tokens of
+     * sentence <i>t</i> are at [sentenceOffsets[t], sentenceOffsets[t+1]).
+     */
+    final int[] sentenceOffsets;
 
     /**
      * The number of sentences in the document.
@@ -33,31 +56,156 @@ class DPDocument {
     final int sentenceCount;
 
     /**
-     * Constructs a representation of a document suitable for dynamic 
+     * Constructs a representation of a document suitable for dynamic
      * programming, by creating a list of cumulative word counts per sentence.
      * Takes a list of sentences (lists of tokens), which are assumed to have
      * already been processed in whatever ways are desired (e.g. cleaned,
      * stemmed, stopwords removed, etc).
-     * 
+     *
      * @param sentences a list of lists of tokens
      */
     DPDocument(List<List<String>> sentences) {
-        
-        ImmutableMultiset.Builder<String> wordsB = new ImmutableMultiset.Builder<>();
-        ImmutableList.Builder<ImmutableMultiset<String>> cumulativeWordUsageCountsB = new ImmutableList.Builder<>();
-
-        sentences.stream().forEach(sentence -> {
-            wordsB.addAll(sentence);
-            ImmutableMultiset<String> wordsSoFar = wordsB.build();
-            cumulativeWordUsageCountsB.add(wordsSoFar);
-        });
-        this.sentenceCount = sentences.size();
-
-        ImmutableMultiset<String> wordCounts = wordsB.build();
-        this.vocabulary = ImmutableList.copyOf(wordCounts.elementSet());
-        this.cumulativeWordUsageCounts = cumulativeWordUsageCountsB.build();
+        this(null, sentences);
+    }
+
+    /**
+     * Constructs a representation of a document from sentences of word IDs
+     * into a vocabulary shared with other documents. The document still
+     * numbers its own words in order of first appearance, so that its
+     * vocabulary size, and hence its segment scores, are the same as if it
+     * had been constructed from the words themselves.
+     *
+     * @param sentences an array of arrays of word IDs
+     * @param words the shared vocabulary, indexed by word ID
+     */
+    DPDocument(int[][] sentences, List<String> words) {
+        ImmutableList.Builder<String> vocabularyB = new ImmutableList.Builder<>();
+        Map<String,Integer> ids = new HashMap<>();
+        Map<Integer,Integer> localIDs = new HashMap<>();
+
+        this.sentenceCount = sentences.length;
+        this.cumulativeCounts = new int[this.sentenceCount + 1][];
+        this.sentenceOffsets = new int[this.sentenceCount + 1];
+        this.tokens = new int[Arrays.stream(sentences).mapToInt(s -> s.length).sum()];
+
+        int[] counts = new int[0];
+        this.cumulativeCounts[0] = counts;
+        for (int t = 0; t < this.sentenceCount; t++) {
+            int[] sentence = sentences[t];
+            int offset = this.sentenceOffsets[t];
+            for (int i = 0; i < sentence.length; i++) {
+                Integer id = localIDs.get(sentence[i]);
+                if (id == null) {
+                    String word = words.get(sentence[i]);
+                    id = ids.size();
+                    ids.put(word, id);
+                    localIDs.put(sentence[i], id);
+                    vocabularyB.add(word);
+                }
+                this.tokens[offset + i] = id;
+            }
+            this.sentenceOffsets[t + 1] = offset + sentence.length;
+            counts = Arrays.copyOf(counts, ids.size());
+            for (int i = offset; i < this.sentenceOffsets[t + 1]; i++) {
+                counts[this.tokens[i]]++;
+            }
+            this.cumulativeCounts[t + 1] = counts;
+        }
+
+        this.vocabulary = vocabularyB.build();
+        this.wordIDs = ImmutableMap.copyOf(ids);
+    }
+
+    /**
+     * Constructs a representation of a document consisting of the sentences
+     * of a previous document followed by some new sentences. Word IDs and the
+     * rows of cumulative counts of the previous document are reused, so the
+     * cost is proportional to the number of new sentences, apart from
+     * copying references to the previous rows.
+     *
+     * @param previous the previous document, or null to start from nothing
+     * @param sentences a list of lists of tokens to append
+     */
+    private DPDocument(DPDocument previous, List<List<String>> sentences) {
+
+        ImmutableList.Builder<String> vocabularyB = new ImmutableList.Builder<>();
+        Map<String,Integer> ids = new HashMap<>();
+        int previousCount = 0;
+        int previousTokens = 0;
+        if (previous != null) {
+            vocabularyB.addAll(previous.vocabulary);
+            ids.putAll(previous.wordIDs);
+            previousCount = previous.sentenceCount;
+            previousTokens = previous.tokens.length;
+        }
+
+        this.sentenceCount = previousCount + sentences.size();
+        this.cumulativeCounts = new int[this.sentenceCount + 1][];
+        this.sentenceOffsets = new int[this.sentenceCount + 1];
+        this.tokens = new int[previousTokens 
+                + sentences.stream().mapToInt(List::size).sum()];
+
+        int[] counts;
+        if (previous == null) {
+            counts = new int[0];
+            this.cumulativeCounts[0] = counts;
+        } else {
+            System.arraycopy(previous.cumulativeCounts, 0, 
+                    this.cumulativeCounts, 0, previousCount + 1);
+            System.arraycopy(previous.sentenceOffsets, 0, 
+                    this.sentenceOffsets, 0, previousCount + 1);
+            System.arraycopy(previous.tokens, 0, this.tokens, 0, previousTokens);
+            counts = previous.cumulativeCounts[previousCount];
+        }
+        for (int t = previousCount; t < this.sentenceCount; t++) {
+            List<String> sentence = sentences.get(t - previousCount);
+            int offset = this.sentenceOffsets[t];
+            for (int i = 0; i < sentence.size(); i++) {
+                String word = sentence.get(i);
+                Integer id = ids.get(word);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(word, id);
+                    vocabularyB.add(word);
+                }
+                this.tokens[offset + i] = id;
+            }
+            this.sentenceOffsets[t + 1] = offset + sentence.size();
+            counts = Arrays.copyOf(counts, ids.size());
+            for (int i = offset; i < this.sentenceOffsets[t + 1]; i++) {
+                counts[this.tokens[i]]++;
+            }
+            this.cumulativeCounts[t + 1] = counts;
+        }
+
+        this.vocabulary = vocabularyB.build();
+        this.wordIDs = ImmutableMap.copyOf(ids);
+    }
+
+    /**
+     * Returns a new document consisting of the sentences of this one 
+     * followed by the given sentences. This document is unchanged, and the
+     * new one shares its word IDs and cumulative counts, so segments of this
+     * document have the same counts in the new one.
+     *
+     * @param sentences a list of lists of tokens to append
+     * @return the extended document
+     */
+    DPDocument append(List<List<String>> sentences) {
+        return new DPDocument(this, sentences);
+    }
+
+    /**
+     * @param other another document
+     * @return whether this document was made by appending sentences to the
+     * other, or is the other
+     */
+    boolean isExtensionOf(DPDocument other) {
+        return other.sentenceCount <= this.sentenceCount
+                && this.cumulativeCounts[other.sentenceCount] 
+                        == other.cumulativeCounts[other.sentenceCount];
     }
-    
+
     /**
      * Given a specific word (type) and a {@link segmentation.Segment} of this
      * document, returns the number of times that word (type) is used in that
@@ -68,18 +216,87 @@ class DPDocument {
      * @return the number of times the word appears in the segment
      */
     int countWordInSegment(String word, Segment segment) {
-        int count = this.cumulativeWordUsageCounts.get(
-                segment.start + segment.length - 1).count(word); 
-        if (segment.start > 0) {
-            count -= this.cumulativeWordUsageCounts.get(segment.start - 1).count(word);
+        checkSegment(segment);
+        Integer id = this.wordIDs.get(word);
+        if (id == null) {
+            return 0;
         }
-        return count;
+        return countAt(this.cumulativeCounts[segment.start + segment.length], id)
+                - countAt(this.cumulativeCounts[segment.start], id);
     }
-    
+
+    /**
+     * Given a {@link segmentation.Segment} of this document, returns the
+     * number of times each word (type) in the vocabulary is used in that
+     * segment, indexed by word ID.
+     *
+     * @param segment
+     * @return a vector of word counts as long as the vocabulary
+     */
     int[] countWordsInSegment(Segment segment) {
-        return this.vocabulary.stream()
-                .mapToInt(word -> this.countWordInSegment(word, segment))
-                .toArray();
+        checkSegment(segment);
+        int[] end = this.cumulativeCounts[segment.start + segment.length];
+        int[] start = this.cumulativeCounts[segment.start];
+        int[] counts = Arrays.copyOf(end, this.vocabulary.size());
+        for (int id = 0; id < start.length; id++) {
+            counts[id] -= start[id];
+        }
+        return counts;
+    }
+
+    /**
+     * Given a {@link segmentation.Segment} of this document, returns the
+     * number of times each word (type) used in that segment appears in it.
+     * Only the words that actually appear are stored, so the cost is
+     * proportional to the length of the segment rather than the size of the
+     * vocabulary.
+     *
+     * @param segment
+     * @return sparse word counts for the segment
+     */
+    SparseCounts sparseCountsInSegment(Segment segment) {
+        checkSegment(segment);
+        int[] segmentTokens = Arrays.copyOfRange(this.tokens,
+                this.sentenceOffsets[segment.start],
+                this.sentenceOffsets[segment.start + segment.length]);
+        Arrays.sort(segmentTokens);
+        int[] ids = new int[segmentTokens.length];
+        int[] counts = new int[segmentTokens.length];
+        int distinct = 0;
+        for (int i = 0; i < segmentTokens.length; i++) {
+            if (i == 0 || segmentTokens[i] != segmentTokens[i - 1]) {
+                ids[distinct++] = segmentTokens[i];
+            }
+            counts[distinct - 1]++;
+        }
+        return new SparseCounts(this.vocabulary.size(),
+                Arrays.copyOf(ids, distinct), Arrays.copyOf(counts, distinct));
+    }
+
+    /**
+     * Find the largest number of tokens in any segment of this document of at
+     * most the given number of sentences.
+     *
+     * @param maxLength the maximum number of sentences in a segment
+     * @return the largest number of tokens in such a segment
+     */
+    int maxTokenCount(int maxLength) {
+        int maxTokens = 0;
+        for (int start = 0; start < this.sentenceCount; start++) {
+            int end = Math.min(start + maxLength, this.sentenceCount);
+            maxTokens = Math.max(maxTokens, 
+                    this.sentenceOffsets[end] - this.sentenceOffsets[start]);
+        }
+        return maxTokens;
+    }
+
+    private void checkSegment(Segment segment) {
+        checkPositionIndexes(segment.start, segment.start + segment.length,
+                this.sentenceCount);
+    }
+
+    private static int countAt(int[] counts, int id) {
+        return id < counts.length ? counts[id] : 0;
     }
 
 }
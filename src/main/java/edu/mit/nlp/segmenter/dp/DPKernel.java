@@ -0,0 +1,232 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import com.google.common.collect.ImmutableList;
+import in.aesh.segment.Segment;
+import in.aesh.segment.Segmentation;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * DPKernel runs the dynamic program that finds the best segmentation of a
+ * document into a given number of segments from its segment scores. When
+ * only segmentations into exactly the given number of segments are needed,
+ * scores are kept for only two layers of the table at a time; otherwise all
+ * the layers are kept, so that the table can be extended when sentences are
+ * appended to the document. For each cell only the start of its last
+ * segment is recorded, as an int back-pointer; {@link Segment} objects are
+ * created only when a segmentation is read out. The program can also be run
+ * over a range of the sentences of a document, reading the scores of the
+ * whole document, to segment one of its segments.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class DPKernel {
+
+    /**
+     * The number of DP cells to maximize over in one fork/join task.
+     */
+    private static final int CELL_GRAIN = 256;
+
+    /**
+     * Back-pointers, indexed by [numSegments][end]: the start of the last
+     * segment of the best segmentation of the first end sentences into
+     * numSegments segments, or -1 if there is none.
+     */
+    private final int[][] backPointers;
+
+    /**
+     * The best score of a segmentation of the whole document into each
+     * number of segments, or negative infinity if there is none.
+     */
+    private final double[] bestScores;
+
+    /**
+     * Scores, indexed by [numSegments][end]: the score of the best 
+     * segmentation of the first end sentences into numSegments segments.
+     * Null if only two layers were kept.
+     */
+    private final double[][] layers;
+
+    private final int numSegments;
+    private final int from;
+    private final int sentenceCount;
+
+    /**
+     * Run the dynamic program.
+     *
+     * @param segLLs segment scores of the document
+     * @param numSegments the maximum number of segments
+     * @param exact whether only segmentations of the whole document into
+     * exactly numSegments segments are needed, rather than segmentations
+     * into every number of segments up to numSegments
+     * @param pool a pool to split each layer across, or null to run on the
+     * calling thread
+     */
+    DPKernel(SegmentScores segLLs, int numSegments, boolean exact, ForkJoinPool pool) {
+        this(segLLs, 0, segLLs.doc.sentenceCount, numSegments, exact, pool);
+    }
+
+    /**
+     * Run the dynamic program over a range of the sentences of a document.
+     * Segmentations read out cover only the range, and their segments start
+     * at their indexes in the whole document.
+     *
+     * @param segLLs segment scores of the document
+     * @param from index of the first sentence of the range
+     * @param to index of the sentence after the range
+     * @param numSegments the maximum number of segments
+     * @param exact whether only segmentations of the whole range into
+     * exactly numSegments segments are needed
+     * @param pool a pool to split each layer across, or null to run on the
+     * calling thread
+     */
+    DPKernel(SegmentScores segLLs, int from, int to, int numSegments, boolean exact, 
+            ForkJoinPool pool) {
+        checkArgument(numSegments > 0, "number of segments must be > 0; was %s", numSegments);
+        checkPositionIndexes(from, to, segLLs.doc.sentenceCount);
+        final int T = to - from;
+        this.numSegments = numSegments;
+        this.from = from;
+        this.sentenceCount = T;
+        this.backPointers = new int[numSegments+1][];
+        this.bestScores = new double[numSegments+1];
+        this.layers = exact ? null : new double[numSegments+1][];
+
+        double[] previous = new double[T+1];
+        double[] current = new double[T+1];
+        Arrays.fill(previous, Double.NEGATIVE_INFINITY);
+        previous[0] = 0;
+        this.bestScores[0] = T == 0 ? 0 : Double.NEGATIVE_INFINITY;
+        if (!exact) {
+            this.layers[0] = previous;
+        }
+
+        for (int i = 1; i <= numSegments; i++) {
+            final int[] pointers = new int[T+1];
+            this.backPointers[i] = pointers;
+            if (!exact) {
+                current = new double[T+1];
+                this.layers[i] = current;
+            }
+            Arrays.fill(current, Double.NEGATIVE_INFINITY);
+            Arrays.fill(pointers, -1);
+            // The segments after this one need at least one sentence each.
+            int lastEnd = exact ? T - (numSegments-i) : T;
+            maximize(segLLs, from, i, previous, current, pointers, i, lastEnd+1, pool);
+            this.bestScores[i] = current[T];
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    /**
+     * Extend the dynamic program of a document to a document made by
+     * appending sentences to it, computing only the cells for the new ends.
+     * The previous kernel must have kept all its layers, and the scores of 
+     * the segments of the previous document must be unchanged, which is the
+     * case if no words were added to the vocabulary.
+     *
+     * @param previous the kernel of the previous document, which was not
+     * constructed for exactly its number of segments
+     * @param segLLs segment scores of the extended document
+     * @param pool a pool to split each layer across, or null to run on the
+     * calling thread
+     */
+    DPKernel(DPKernel previous, SegmentScores segLLs, ForkJoinPool pool) {
+        checkArgument(previous.layers != null && previous.from == 0,
+                "only kernels of whole documents that keep all their layers "
+                + "can be extended");
+        final int T = segLLs.doc.sentenceCount;
+        final int oldT = previous.sentenceCount;
+        checkArgument(T >= oldT, "cannot extend from %s to %s sentences", oldT, T);
+        this.numSegments = previous.numSegments;
+        this.from = 0;
+        this.sentenceCount = T;
+        this.backPointers = new int[this.numSegments+1][];
+        this.bestScores = new double[this.numSegments+1];
+        this.layers = new double[this.numSegments+1][];
+
+        this.layers[0] = Arrays.copyOf(previous.layers[0], T+1);
+        Arrays.fill(this.layers[0], oldT+1, T+1, Double.NEGATIVE_INFINITY);
+        this.bestScores[0] = T == 0 ? 0 : Double.NEGATIVE_INFINITY;
+
+        for (int i = 1; i <= this.numSegments; i++) {
+            this.layers[i] = Arrays.copyOf(previous.layers[i], T+1);
+            this.backPointers[i] = Arrays.copyOf(previous.backPointers[i], T+1);
+            Arrays.fill(this.layers[i], oldT+1, T+1, Double.NEGATIVE_INFINITY);
+            Arrays.fill(this.backPointers[i], oldT+1, T+1, -1);
+            maximize(segLLs, 0, i, this.layers[i-1], this.layers[i], this.backPointers[i],
+                    Math.max(i, oldT+1), T+1, pool);
+            this.bestScores[i] = this.layers[i][T];
+        }
+    }
+
+    /**
+     * Fill the cells of a layer for ends in [first, last), relative to the
+     * given offset into the document, from the previous layer.
+     */
+    private static void maximize(SegmentScores segLLs, int offset, int layer, 
+            double[] from, double[] to, int[] pointers, int first, int last, 
+            ForkJoinPool pool) {
+        RangeTask.Action maximize = (firstEnd, lastEnd) -> {
+            for (int end = firstEnd; end < lastEnd; end++) {
+                double bestScore = Double.NEGATIVE_INFINITY;
+                int bestStart = -1;
+                for (int start = Math.max(layer-1, end-segLLs.maxLength); start < end; start++) {
+                    double score = from[start] + segLLs.get(offset+start, end-start);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestStart = start;
+                    }
+                }
+                to[end] = bestScore;
+                pointers[end] = bestStart;
+            }
+        };
+        if (pool != null) {
+            pool.invoke(new RangeTask(first, last, CELL_GRAIN, maximize));
+        } else {
+            maximize.apply(first, last);
+        }
+    }
+
+    /**
+     * @return the maximum number of segments
+     */
+    int numSegments() {
+        return this.numSegments;
+    }
+
+    /**
+     * @param numSegments a number of segments
+     * @return the score of the best segmentation of the document into the
+     * given number of segments, or negative infinity if there is none
+     */
+    double bestScore(int numSegments) {
+        return this.bestScores[numSegments];
+    }
+
+    /**
+     * Working backward from the end of the document or range, build the best
+     * segmentation into the given number of segments.
+     *
+     * @param numSegments a number of segments
+     * @return the segmentation, or null if there is none
+     */
+    Segmentation backtrack(int numSegments) {
+        Segment[] segments = new Segment[numSegments];
+        int end = this.sentenceCount;
+        for (int k = numSegments; k > 0; k--) {
+            int start = this.backPointers[k][end];
+            if (start < 0) {
+                return null;
+            }
+            segments[k-1] = new Segment(this.from + start, end-start);
+            end = start;
+        }
+        return new Segmentation(ImmutableList.copyOf(segments));
+    }
+}
@@ -1,18 +1,29 @@
 package edu.mit.nlp.segmenter.dp;
 
-import cc.mallet.optimize.LimitedMemoryBFGS;
-import cc.mallet.optimize.OptimizationException;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Maps;
 import in.aesh.segment.Segment;
 import in.aesh.segment.Segmentation;
 import in.aesh.segment.Utils;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.ToDoubleFunction;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,9 +34,35 @@ import java.util.logging.Logger;
 public class DPSeg {
 
     private final static Logger log = Logger.getLogger(DPSeg.class.getSimpleName());
-    private final Map<String,DPDocument> documents;
+    private final static int MAX_EM_ITERATIONS = 20;
+    private Map<String,DPDocument> documents;
     private final Map<String,Integer> segmentCounts;
     private ImmutableMap<String,Segmentation> segmentations;
+    private int maxSegmentLength = 0;
+    private double maxSegmentLengthFactor = 0;
+    private int parallelThreshold = 2000;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private double pruningMargin = 20;
+    private boolean cacheStatistics = false;
+    private long maxStatisticsSize = DEFAULT_MAX_STATISTICS_SIZE;
+    private ConcentrationEstimator estimator = new NewtonEstimator();
+    private boolean incremental = false;
+    private final ConcurrentMap<String,SegmentStatistics> statistics = 
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,Lattice> lattices = 
+            new ConcurrentHashMap<>();
+
+    /**
+     * The number of start rows of segment scores to fill in one fork/join
+     * task.
+     */
+    private static final int ROW_GRAIN = 16;
+
+    /**
+     * The default largest number of ints the statistics of one document may
+     * take, about 256MB.
+     */
+    public static final long DEFAULT_MAX_STATISTICS_SIZE = 1L << 26;
 
     /**
      * @param texts
@@ -37,56 +74,449 @@ public class DPSeg {
 
         this.segmentCounts = segmentCounts;
         this.segmentations = ImmutableMap.of();
-        this.documents = texts.entrySet().stream()
+        this.documents = documentsOf(texts);
+    }
+
+    /**
+     * Construct without desired segment counts, for segmenting with
+     * {@link #segmentPenalized(double, double)} or
+     * {@link #segmentAll(double, int)}.
+     *
+     * @param texts
+     */
+    public DPSeg(Map<String,List<List<String>>> texts) {
+        this.segmentCounts = ImmutableMap.of();
+        this.segmentations = ImmutableMap.of();
+        this.documents = documentsOf(texts);
+    }
+
+    /**
+     * Construct from texts given as sentences of word IDs into a vocabulary
+     * shared by all the texts, such as {@link in.aesh.segment.PreparedTexts}.
+     * The result is the same as constructing from the words themselves.
+     *
+     * @param texts a map of text IDs to arrays of sentences of word IDs
+     * @param vocabulary the shared vocabulary, indexed by word ID
+     * @param segmentCounts
+     */
+    public DPSeg(Map<String,int[][]> texts, List<String> vocabulary, 
+            Map<String,Integer> segmentCounts) {
+        checkArgument(segmentCounts.keySet().containsAll(texts.keySet()));
+
+        this.segmentCounts = segmentCounts;
+        this.segmentations = ImmutableMap.of();
+        this.documents = documentsOf(texts, vocabulary);
+    }
+
+    /**
+     * Construct from texts given as sentences of word IDs, without desired
+     * segment counts.
+     *
+     * @param texts a map of text IDs to arrays of sentences of word IDs
+     * @param vocabulary the shared vocabulary, indexed by word ID
+     */
+    public DPSeg(Map<String,int[][]> texts, List<String> vocabulary) {
+        this.segmentCounts = ImmutableMap.of();
+        this.segmentations = ImmutableMap.of();
+        this.documents = documentsOf(texts, vocabulary);
+    }
+
+    private static Map<String,DPDocument> documentsOf(Map<String,List<List<String>>> texts) {
+        return texts.entrySet().stream()
                 .map(e -> Maps.immutableEntry(e.getKey(), new DPDocument(e.getValue())))
                 .collect(Utils.toImmutableMap());
     }
 
-    private static Segmentation bestSegmentationOf(DPDocument doc, int numSegments, double α) {
+    private static Map<String,DPDocument> documentsOf(Map<String,int[][]> texts, 
+            List<String> vocabulary) {
+        return texts.entrySet().stream()
+                .map(e -> Maps.immutableEntry(e.getKey(), 
+                        new DPDocument(e.getValue(), vocabulary)))
+                .collect(Utils.toImmutableMap());
+    }
 
-        double[][] bestScores = new double[numSegments+1][doc.sentenceCount+1];
-        Segment[][] bestSegments = new Segment[numSegments+1][doc.sentenceCount+1];
-        
-        double[][] segLLs = new double[doc.sentenceCount+1][doc.sentenceCount+1];
-        for (int start = 0; start < doc.sentenceCount; start++) {
-            for (int length = 1; start+length <= doc.sentenceCount; length++) {
-                segLLs[start][length] = DirichletMultinomial.logLikelihood(
-                        α, doc.countWordsInSegment(new Segment(start, length)));
-            }
+    /**
+     * Limit the length of segments to at most the given number of sentences.
+     * Segment scoring and the dynamic program are then restricted to a band
+     * of width maxSegmentLength, so time and memory are O(T·L) rather than
+     * O(T²) in the number of sentences T.
+     *
+     * @param maxSegmentLength maximum segment length in sentences, or 0 for
+     * no limit
+     * @return this DPSeg
+     */
+    public DPSeg setMaxSegmentLength(int maxSegmentLength) {
+        checkArgument(maxSegmentLength >= 0,
+                "max segment length must be >= 0; was %s", maxSegmentLength);
+        this.maxSegmentLength = maxSegmentLength;
+        return this;
+    }
+
+    /**
+     * Limit the length of segments to at most the given multiple of the mean
+     * segment length T/K of each document. If an absolute maximum has also
+     * been set, the smaller of the two applies.
+     *
+     * @param maxSegmentLengthFactor multiple of the mean segment length, or 0
+     * for no limit
+     * @return this DPSeg
+     */
+    public DPSeg setMaxSegmentLengthFactor(double maxSegmentLengthFactor) {
+        checkArgument(maxSegmentLengthFactor >= 0,
+                "max segment length factor must be >= 0; was %s", maxSegmentLengthFactor);
+        this.maxSegmentLengthFactor = maxSegmentLengthFactor;
+        return this;
+    }
+
+    /**
+     * Split the work of segmenting any single document with at least the
+     * given number of sentences across a fork/join pool: segment scores are
+     * filled one start row per task, and each layer of the dynamic program
+     * maximizes over ranges of end sentences in parallel. Smaller documents
+     * are segmented on a single thread, since the overhead of splitting them
+     * outweighs the gain.
+     *
+     * @param parallelThreshold minimum number of sentences, or 0 to split
+     * every document
+     * @return this DPSeg
+     */
+    public DPSeg setParallelThreshold(int parallelThreshold) {
+        checkArgument(parallelThreshold >= 0,
+                "parallel threshold must be >= 0; was %s", parallelThreshold);
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    /**
+     * Use the given pool for splitting the work of segmenting large
+     * documents. By default the common pool is used.
+     *
+     * @param pool a fork/join pool
+     * @return this DPSeg
+     */
+    public DPSeg setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Compute the count histograms of every candidate segment of each
+     * document once and keep them, so that segmenting again at a different
+     * concentration parameter only has to rescore them from the histograms.
+     * This trades memory for time when segmenting the same texts repeatedly,
+     * at a cost of one histogram per candidate segment of every document.
+     * Whatever this is set to, statistics are cached for the duration of
+     * {@link #segment(List)} and of estimating concentration parameters, and
+     * discarded afterwards unless this is set. Statistics are never computed
+     * for a document if they might take more than
+     * {@link #setMaxStatisticsSize(long) the maximum size}.
+     *
+     * @param cacheStatistics whether to cache segment statistics
+     * @return this DPSeg
+     */
+    public DPSeg setCacheStatistics(boolean cacheStatistics) {
+        this.cacheStatistics = cacheStatistics;
+        if (!cacheStatistics) {
+            this.statistics.clear();
         }
-        
-        for (int end = 1; end <= doc.sentenceCount; end++) {
-            bestScores[0][end] = -Double.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * @return whether segment statistics of any document are cached
+     */
+    boolean hasCachedStatistics() {
+        return !this.statistics.isEmpty();
+    }
+
+    /**
+     * Set the largest number of ints the segment statistics of one document
+     * may take. Documents whose statistics might be larger, such as long
+     * documents without a maximum segment length, are rescored from their
+     * words instead.
+     *
+     * @param maxStatisticsSize the maximum size, or 0 to never compute
+     * statistics
+     * @return this DPSeg
+     */
+    public DPSeg setMaxStatisticsSize(long maxStatisticsSize) {
+        checkArgument(maxStatisticsSize >= 0,
+                "max statistics size must be >= 0; was %s", maxStatisticsSize);
+        this.maxStatisticsSize = maxStatisticsSize;
+        return this;
+    }
+
+    /**
+     * @return the cache of segment statistics, or null if they are not to be
+     * cached
+     */
+    private ConcurrentMap<String,SegmentStatistics> cachedStatistics() {
+        return this.cacheStatistics ? this.statistics : null;
+    }
+
+    /**
+     * @return a cache of segment statistics for the duration of one call:
+     * the shared cache if statistics are cached, otherwise a new one that is
+     * discarded with the call
+     */
+    private ConcurrentMap<String,SegmentStatistics> statisticsForCall() {
+        return this.cacheStatistics ? this.statistics : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Set the method used to estimate the concentration parameter for a
+     * fixed segmentation in {@link #estimateConcentrationParameter(double)}.
+     * The default is a {@link NewtonEstimator}.
+     *
+     * @param estimator the estimator
+     * @return this DPSeg
+     */
+    public DPSeg setConcentrationEstimator(ConcentrationEstimator estimator) {
+        this.estimator = checkNotNull(estimator);
+        return this;
+    }
+
+    /**
+     * Keep the segment scores and the dynamic program table of each text
+     * after segmenting it with {@link #segment(double)}, so that after
+     * {@link #appendSentences} only the segments and table cells ending in
+     * the appended sentences have to be computed, at a cost proportional to
+     * the number of appended sentences times the number of sentences, rather
+     * than to the square of the number of sentences. Every layer of the
+     * table is kept, so this takes K times as much memory for the table of a
+     * text with K segments. The table is only reused when segmenting again
+     * with the same concentration parameter and the same maximum segment 
+     * length (which a maximum segment length factor changes); if the 
+     * appended sentences add words to the vocabulary, the scores are still
+     * reused but the table is recomputed, since every score changes with the
+     * vocabulary size.
+     *
+     * @param incremental whether to keep segment scores and tables
+     * @return this DPSeg
+     */
+    public DPSeg setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) {
+            this.lattices.clear();
         }
-        for (int i = 1; i <= numSegments; i++) {
-            for (int end = 0; end < i; end++) {
-                bestScores[i][end] = -Double.MAX_VALUE;
-            }
-            for (int end = i; end <= doc.sentenceCount; end++) {
-                double bestScore = -Double.MAX_VALUE;
-                int bestStart = -1;
-                for (int start = 0; start < end; start++) {
-                    double score = bestScores[i-1][start] + segLLs[start][end-start];
-                    if (score > bestScore) {
-                        bestScore = score;
-                        bestStart = start;
-                    }
-                }
-                bestScores[i][end] = bestScore;
-                bestSegments[i][end] = new Segment(bestStart, end-bestStart);
-            }
+        return this;
+    }
+
+    /**
+     * Append sentences to a text. The text must be segmented again to update
+     * its segmentation; see {@link #setIncremental(boolean)}.
+     *
+     * @param key a text ID
+     * @param sentences a list of lists of tokens, processed in the same way
+     * as the texts given to the constructor
+     * @return this DPSeg
+     */
+    public DPSeg appendSentences(String key, List<List<String>> sentences) {
+        checkArgument(this.documents.containsKey(key), "no text with ID %s", key);
+        DPDocument doc = this.documents.get(key).append(sentences);
+        this.documents = this.documents.entrySet().stream()
+                .map(e -> e.getKey().equals(key) ? Maps.immutableEntry(key, doc) : e)
+                .collect(Utils.toImmutableMap());
+        this.statistics.remove(key);
+        return this;
+    }
+
+    /**
+     * Keep a candidate segment start in {@link #segmentPenalized} until the
+     * best score through it falls more than the given margin below the best
+     * score so far. A margin of 0 gives standard PELT pruning, which can
+     * miss the optimum because merging similar segments can increase their
+     * DCM log-likelihood; larger margins prune less and come closer to the 
+     * exact optimum. The default is 20.
+     *
+     * @param pruningMargin the margin, in units of log-likelihood
+     * @return this DPSeg
+     */
+    public DPSeg setPruningMargin(double pruningMargin) {
+        checkArgument(pruningMargin >= 0,
+                "pruning margin must be >= 0; was %s", pruningMargin);
+        this.pruningMargin = pruningMargin;
+        return this;
+    }
+
+    /**
+     * Given a document and a desired number of segments, determine the
+     * maximum segment length to use. The result is never shorter than is
+     * needed to cover the document with the desired number of segments.
+     */
+    private int maxSegmentLengthOf(String key, DPDocument doc, int numSegments) {
+        int maxLength = doc.sentenceCount;
+        if (this.maxSegmentLength > 0) {
+            maxLength = Math.min(maxLength, this.maxSegmentLength);
+        }
+        if (this.maxSegmentLengthFactor > 0) {
+            maxLength = Math.min(maxLength, (int) Math.ceil(
+                    this.maxSegmentLengthFactor * doc.sentenceCount / numSegments));
+        }
+        int minimum = (doc.sentenceCount + numSegments - 1) / numSegments;
+        if (maxLength < minimum) {
+            log.log(Level.WARNING, "Max segment length {0} is too short to divide "
+                    + "{1} into {2} segments; using {3}",
+                    new Object[]{maxLength, key, numSegments, minimum});
+            maxLength = minimum;
         }
+        return maxLength;
+    }
+
+    /**
+     * Score the segments of a document and run the dynamic program over them,
+     * for segmentations into numSegments segments.
+     *
+     * @param exact whether only segmentations of the whole document into
+     * exactly numSegments segments are needed, rather than segmentations
+     * into every number of segments up to numSegments
+     */
+    private DPKernel dynamicProgram(String key, DPDocument doc, int numSegments, 
+            int maxLength, double α, boolean exact, 
+            ConcurrentMap<String,SegmentStatistics> statistics) {
+        SegmentScores segLLs = segmentScores(
+                key, doc, numSegments, maxLength, α, exact, statistics);
+        return new DPKernel(segLLs, numSegments, exact, 
+                parallel(doc) ? this.pool : null);
+    }
+
+    /**
+     * Score the segments of a document that the dynamic program for
+     * segmentations into numSegments segments can use.
+     *
+     * @param exact whether only segmentations of the whole document into
+     * exactly numSegments segments are needed
+     */
+    private SegmentScores segmentScores(String key, DPDocument doc, int numSegments, 
+            int maxLength, double α, boolean exact) {
+        return segmentScores(key, doc, numSegments, maxLength, α, exact, 
+                cachedStatistics());
+    }
+
+    /**
+     * Score the segments of a document that the dynamic program for
+     * segmentations into numSegments segments can use, from statistics in
+     * the given cache if possible.
+     *
+     * @param statistics a cache of segment statistics, or null to score the
+     * segments from the words of the document
+     */
+    private SegmentScores segmentScores(String key, DPDocument doc, int numSegments, 
+            int maxLength, double α, boolean exact, 
+            ConcurrentMap<String,SegmentStatistics> statistics) {
+
+        // No segment of a segmentation into numSegments segments can be 
+        // longer than this, so longer segments are never scored.
+        int scoredLength = exact
+                ? Math.min(maxLength, doc.sentenceCount-numSegments+1)
+                : maxLength;
+        boolean parallel = parallel(doc);
+
+        SegmentStatistics cached = statistics == null ? null 
+                : statisticsOf(statistics, key, doc, scoredLength, parallel);
+        SegmentScores segLLs = cached != null
+                ? new SegmentScores(cached, scoredLength, α)
+                : new SegmentScores(doc, scoredLength, α);
         
-        // Working backward, build a list of the segmentation masses.
-        List<Segment> bestSegmentation = new ArrayList<>(numSegments);
-        bestSegmentation.add(bestSegments[numSegments][doc.sentenceCount]);
-        for (int k = numSegments-1; k > 0; k--) {
-            int remainingMass = doc.sentenceCount 
-                    - bestSegmentation.stream().mapToInt(s -> s.length).sum();
-            bestSegmentation.add(0, bestSegments[k][remainingMass]);
+        if (parallel) {
+            prefill(segLLs, 0, cached == null);
         }
         
-        return new Segmentation(ImmutableList.copyOf(bestSegmentation));
+        return segLLs;
+    }
+
+    /**
+     * Fill the rows of segment scores from the given start row on in 
+     * parallel, so that they can be read concurrently.
+     *
+     * @param scored whether the rows are to be scored from the words of the
+     * document rather than from cached statistics
+     */
+    private void prefill(SegmentScores segLLs, int from, boolean scored) {
+        this.pool.invoke(new RangeTask(from, segLLs.doc.sentenceCount, ROW_GRAIN,
+                (first, last) -> {
+                    SegmentScorer scorer = scored ? segLLs.newScorer() : null;
+                    for (int start = first; start < last; start++) {
+                        segLLs.fill(start, scorer);
+                    }
+                }));
+    }
+
+    /**
+     * Get the segment scores and dynamic program table of a document for
+     * {@link #setIncremental(boolean) incremental} segmentation, extending 
+     * the ones kept from segmenting the document before sentences were 
+     * appended to it if possible.
+     */
+    private DPKernel incrementalProgram(String key, DPDocument doc, int numSegments, 
+            int maxLength, double α, ConcurrentMap<String,SegmentStatistics> statistics) {
+        final ForkJoinPool pool = parallel(doc) ? this.pool : null;
+        return this.lattices.compute(key, (k, previous) -> {
+            if (previous == null || !previous.isExtendedBy(doc, numSegments, α)) {
+                SegmentScores segLLs = segmentScores(
+                        key, doc, numSegments, maxLength, α, false, statistics);
+                return new Lattice(segLLs, new DPKernel(segLLs, numSegments, false, pool));
+            }
+            if (previous.segLLs.doc == doc && previous.segLLs.maxLength 
+                    == Math.min(maxLength, doc.sentenceCount)) {
+                return previous;
+            }
+            SegmentScores segLLs = new SegmentScores(previous.segLLs, doc, maxLength);
+            if (pool != null) {
+                // Rows of the previous sentences that were cut short or never
+                // filled are left unfilled by the extension, so fill them all.
+                prefill(segLLs, 0, true);
+            }
+            // Cells of the table for the previous sentences are unchanged
+            // only if their scores and the segments they range over are.
+            boolean unchanged = doc.vocabulary.size() == previous.segLLs.doc.vocabulary.size()
+                    && Math.min(maxLength, previous.segLLs.doc.sentenceCount) 
+                            == previous.segLLs.maxLength;
+            DPKernel kernel = unchanged
+                    ? new DPKernel(previous.kernel, segLLs, pool)
+                    : new DPKernel(segLLs, previous.kernel.numSegments(), false, pool);
+            return new Lattice(segLLs, kernel);
+        }).kernel;
+    }
+
+    private boolean parallel(DPDocument doc) {
+        return doc.sentenceCount >= this.parallelThreshold;
+    }
+
+    /**
+     * Get the cached statistics for a document, computing them if they have
+     * not been computed yet or don't cover segments of the given length,
+     * unless they might take more than the maximum size.
+     *
+     * @return the statistics, or null if they would be too large
+     */
+    private SegmentStatistics statisticsOf(ConcurrentMap<String,SegmentStatistics> statistics,
+            String key, DPDocument doc, int maxLength, boolean parallel) {
+        int length = Math.min(maxLength, doc.sentenceCount);
+        SegmentStatistics result = statistics.compute(key, (k, cached) -> {
+            if (cached != null && cached.maxLength >= length) {
+                return cached;
+            }
+            long size = SegmentStatistics.sizeOf(doc, length);
+            if (size > this.maxStatisticsSize) {
+                log.log(Level.FINE, "Statistics of {0} might take {1} ints; "
+                        + "scoring its segments from its words instead", 
+                        new Object[]{key, size});
+                return cached;
+            }
+            return new SegmentStatistics(doc, length, parallel ? this.pool : null);
+        });
+        return result != null && result.maxLength >= length ? result : null;
+    }
+
+    private void warnIfBandTooNarrow(String key, DPDocument doc, 
+            Segmentation segmentation, int maxLength) {
+        if (maxLength < doc.sentenceCount && segmentation.stream()
+                .anyMatch(segment -> segment.length == maxLength)) {
+            log.log(Level.WARNING, "Segmentation of {0} has a segment "
+                    + "of the maximum length {1}; the band may be too narrow",
+                    new Object[]{key, maxLength});
+        }
     }
     
     /**
@@ -95,21 +525,311 @@ public class DPSeg {
      * @return a map of text IDs to segmentations
      */
     public Map<String,Segmentation> segment(final double α) {
+        checkState(this.segmentCounts.keySet().containsAll(this.documents.keySet()),
+                "segment counts are required for every text");
         log.log(Level.INFO, "Segmenting texts with α={0}...", α);
 
-        this.segmentations = this.documents.keySet().parallelStream()
+        this.segmentations = segmentGroup(this.documents.keySet(), α, cachedStatistics());
+        
+        return getSegmentations();
+    }
+
+    private ImmutableMap<String,Segmentation> segmentGroup(Collection<String> keys, 
+            double α, ConcurrentMap<String,SegmentStatistics> statistics) {
+        return keys.parallelStream()
+                .map(key -> Maps.immutableEntry(key, segmentDocument(key, α, statistics)))
+                .collect(Utils.toImmutableMap());
+    }
+
+    /**
+     * Segment the texts at each of a list of concentration parameters. The
+     * documents, the cached segment statistics and the thread pool are shared
+     * across all the concentration parameters, and every (α, text) pair is
+     * segmented in parallel, so each additional α costs about one rescoring
+     * and one dynamic program per text.
+     *
+     * @param αs concentration parameters
+     * @return a map of concentration parameters to maps of text IDs to
+     * segmentations
+     */
+    public Map<Double,Map<String,Segmentation>> segment(final List<Double> αs) {
+        checkState(this.segmentCounts.keySet().containsAll(this.documents.keySet()),
+                "segment counts are required for every text");
+        log.log(Level.INFO, "Segmenting texts with {0} values of α...", αs.size());
+
+        final ConcurrentMap<String,SegmentStatistics> statistics = statisticsForCall();
+        Map<Map.Entry<Double,String>,Segmentation> results = αs.stream()
+                .distinct()
+                .flatMap(α -> this.documents.keySet().stream()
+                        .map(key -> Maps.immutableEntry(α, key)))
+                .collect(Collectors.toList())
+                .parallelStream()
+                .collect(Collectors.toConcurrentMap(
+                        job -> job, 
+                        job -> segmentDocument(job.getValue(), job.getKey(), statistics)));
+
+        return αs.stream()
+                .distinct()
+                .map(α -> Maps.immutableEntry(α, 
+                        (Map<String,Segmentation>) this.documents.keySet().stream()
+                                .map(key -> Maps.immutableEntry(key, 
+                                        results.get(Maps.immutableEntry(α, key))))
+                                .collect(Utils.toImmutableMap())))
+                .collect(Utils.toImmutableMap());
+    }
+
+    private Segmentation segmentDocument(String key, double α,
+            ConcurrentMap<String,SegmentStatistics> statistics) {
+        final DPDocument doc = this.documents.get(key);
+        final int numSegments = this.segmentCounts.get(key);
+
+        final int maxLength = maxSegmentLengthOf(key, doc, numSegments);
+
+        log.log(Level.INFO, "Segmenting {0}...", key);
+        DPKernel kernel = this.incremental
+                ? incrementalProgram(key, doc, numSegments, maxLength, α, statistics)
+                : dynamicProgram(key, doc, numSegments, maxLength, α, true, statistics);
+        Segmentation segmentation = kernel.backtrack(numSegments);
+        warnIfBandTooNarrow(key, doc, segmentation, maxLength);
+        return segmentation;
+    }
+
+    /**
+     * Find the posterior probability of a boundary after each sentence of 
+     * each text, over all its segmentations into the number of segments 
+     * given to the constructor. The best segmentation of each text is found
+     * from the same segment scores and becomes its current segmentation.
+     *
+     * @param α concentration parameter
+     * @return a map of text IDs to boundary probabilities indexed by
+     * sentence, the last of which is always 1
+     */
+    public Map<String,double[]> boundaryProbabilities(final double α) {
+        checkState(this.segmentCounts.keySet().containsAll(this.documents.keySet()),
+                "segment counts are required for every text");
+        log.log(Level.INFO, "Finding boundary probabilities of texts with α={0}...", α);
+
+        Map<String,Map.Entry<Segmentation,double[]>> results = 
+                this.documents.keySet().parallelStream()
                 .map(key -> {
                     final DPDocument doc = this.documents.get(key);
                     final int numSegments = this.segmentCounts.get(key);
+                    final int maxLength = maxSegmentLengthOf(key, doc, numSegments);
+                    final ForkJoinPool pool = parallel(doc) ? this.pool : null;
 
                     log.log(Level.INFO, "Segmenting {0}...", key);
-                    return Maps.immutableEntry(key, bestSegmentationOf(doc, numSegments, α));
+                    SegmentScores segLLs = segmentScores(
+                            key, doc, numSegments, maxLength, α, true);
+                    Segmentation segmentation = new DPKernel(
+                            segLLs, numSegments, true, pool).backtrack(numSegments);
+                    warnIfBandTooNarrow(key, doc, segmentation, maxLength);
+                    double[] probabilities = new BoundaryPosteriors(
+                            segLLs, numSegments, pool).probabilities();
+                    return Maps.immutableEntry(key, 
+                            Maps.immutableEntry(segmentation, probabilities));
                 })
                 .collect(Utils.toImmutableMap());
-        
+
+        this.segmentations = ImmutableMap.copyOf(
+                Maps.transformValues(results, Map.Entry::getKey));
+        return ImmutableMap.copyOf(Maps.transformValues(results, Map.Entry::getValue));
+    }
+
+    /**
+     * Segment each text hierarchically: into the number of segments given to
+     * the constructor, then each of those segments into subsegments, and so
+     * on. The segments of each text are scored once, and each nested dynamic
+     * program runs over the range of the shared scores covered by its 
+     * parent segment, so subsegments cost no rescoring. Since the scores are
+     * those of the whole text, subsegments are scored with the vocabulary 
+     * size of the whole text rather than that of their parent segment. A
+     * segment with fewer sentences than the number of subsegments is split
+     * into single sentences. The top level becomes the current segmentation.
+     *
+     * @param α concentration parameter
+     * @param branching the number of subsegments to split each segment of
+     * each level into, from the top level down
+     * @return a map of text IDs to lists of segmentations covering the whole
+     * text, one for each level from the top level down
+     */
+    public Map<String,List<Segmentation>> segmentHierarchy(
+            final double α, final List<Integer> branching) {
+        checkArgument(branching.stream().allMatch(n -> n > 0),
+                "numbers of subsegments must be > 0; were %s", branching);
+        checkState(this.segmentCounts.keySet().containsAll(this.documents.keySet()),
+                "segment counts are required for every text");
+        log.log(Level.INFO, "Segmenting texts into {0} levels with α={1}...",
+                new Object[]{branching.size() + 1, α});
+
+        ImmutableMap<String,List<Segmentation>> hierarchies = 
+                this.documents.keySet().parallelStream()
+                .map(key -> {
+                    final DPDocument doc = this.documents.get(key);
+                    final int numSegments = this.segmentCounts.get(key);
+                    final int maxLength = maxSegmentLengthOf(key, doc, numSegments);
+
+                    log.log(Level.INFO, "Segmenting {0}...", key);
+                    SegmentScores segLLs = segmentScores(
+                            key, doc, numSegments, maxLength, α, true);
+                    Segmentation top = new DPKernel(segLLs, numSegments, true, 
+                            parallel(doc) ? this.pool : null).backtrack(numSegments);
+                    warnIfBandTooNarrow(key, doc, top, maxLength);
+                    List<Segmentation> levels = new ArrayList<>();
+                    levels.add(top);
+                    for (int subsegments : branching) {
+                        List<Segment> segments = new ArrayList<>();
+                        levels.get(levels.size() - 1).stream().forEach(parent -> {
+                            int k = Math.min(subsegments, parent.length);
+                            new DPKernel(segLLs, parent.start, parent.start + parent.length,
+                                    k, true, parent.length >= this.parallelThreshold 
+                                            ? this.pool : null)
+                                    .backtrack(k).stream().forEach(segments::add);
+                        });
+                        levels.add(new Segmentation(ImmutableList.copyOf(segments)));
+                    }
+                    return Maps.immutableEntry(key, 
+                            (List<Segmentation>) ImmutableList.copyOf(levels));
+                })
+                .collect(Utils.toImmutableMap());
+
+        this.segmentations = ImmutableMap.copyOf(
+                Maps.transformValues(hierarchies, levels -> levels.get(0)));
+        return hierarchies;
+    }
+
+    /**
+     * Find the n best segmentations of each text into the number of segments
+     * given to the constructor, with their log-likelihoods. The segments are
+     * scored once and one dynamic program is run per text, keeping the n
+     * best partial segmentations in each cell. Texts with fewer than n 
+     * possible segmentations get as many as there are. The best segmentation
+     * of each text becomes its current segmentation.
+     *
+     * @param α concentration parameter
+     * @param n the number of segmentations to find for each text
+     * @return a map of text IDs to lists of distinct segmentations, from
+     * best to worst
+     */
+    public Map<String,List<ScoredSegmentation>> segmentBest(final double α, final int n) {
+        checkArgument(n > 0, "number of segmentations must be > 0; was %s", n);
+        checkState(this.segmentCounts.keySet().containsAll(this.documents.keySet()),
+                "segment counts are required for every text");
+        log.log(Level.INFO, "Finding the {0} best segmentations of texts with α={1}...",
+                new Object[]{n, α});
+
+        ImmutableMap<String,List<ScoredSegmentation>> best = 
+                this.documents.keySet().parallelStream()
+                .map(key -> {
+                    final DPDocument doc = this.documents.get(key);
+                    final int numSegments = this.segmentCounts.get(key);
+                    final int maxLength = maxSegmentLengthOf(key, doc, numSegments);
+
+                    log.log(Level.INFO, "Segmenting {0}...", key);
+                    KBestKernel kernel = new KBestKernel(
+                            segmentScores(key, doc, numSegments, maxLength, α, true),
+                            numSegments, n, parallel(doc) ? this.pool : null);
+                    List<ScoredSegmentation> segmentations = IntStream
+                            .range(0, kernel.size())
+                            .mapToObj(rank -> new ScoredSegmentation(
+                                    kernel.backtrack(rank), kernel.score(rank)))
+                            .collect(Utils.toImmutableList());
+                    if (!segmentations.isEmpty()) {
+                        warnIfBandTooNarrow(key, doc, segmentations.get(0).segmentation, 
+                                maxLength);
+                    }
+                    return Maps.immutableEntry(key, segmentations);
+                })
+                .collect(Utils.toImmutableMap());
+
+        this.segmentations = best.entrySet().stream()
+                .filter(e -> !e.getValue().isEmpty())
+                .map(e -> Maps.immutableEntry(e.getKey(), e.getValue().get(0).segmentation))
+                .collect(Utils.toImmutableMap());
+        return best;
+    }
+
+    /**
+     * Find the segmentation of each text that maximizes its log-likelihood 
+     * minus a penalty for each segment, choosing the number of segments 
+     * rather than taking it from the segment counts given to the constructor.
+     * An absolute maximum segment length, if set, also bounds the candidate 
+     * segments considered.
+     *
+     * @param α concentration parameter
+     * @param penalty the penalty per segment, in units of log-likelihood
+     * @return a map of text IDs to segmentations
+     */
+    public Map<String,Segmentation> segmentPenalized(final double α, final double penalty) {
+        log.log(Level.INFO, "Segmenting texts with α={0} and penalty {1}...",
+                new Object[]{α, penalty});
+
+        this.segmentations = this.documents.keySet().parallelStream()
+                .map(key -> {
+                    final DPDocument doc = this.documents.get(key);
+                    final int maxLength = this.maxSegmentLength > 0
+                            ? this.maxSegmentLength : doc.sentenceCount;
+
+                    log.log(Level.INFO, "Segmenting {0}...", key);
+                    Segmentation segmentation = PenalizedDP.bestSegmentationOf(
+                            doc, α, penalty, maxLength, this.pruningMargin);
+                    warnIfBandTooNarrow(key, doc, segmentation, maxLength);
+                    return Maps.immutableEntry(key, segmentation);
+                })
+                .collect(Utils.toImmutableMap());
+
         return getSegmentations();
     }
 
+    /**
+     * Find the best segmentation of each text into every number of segments
+     * from 1 up to a maximum, using one pass of segment scoring and one 
+     * dynamic program per text. The segment counts given to the constructor
+     * are ignored. A maximum segment length factor is taken relative to the 
+     * mean segment length at the maximum number of segments. Numbers of 
+     * segments too small to cover a text within the maximum segment length
+     * are omitted for that text.
+     *
+     * @param α concentration parameter
+     * @param maxSegments the maximum number of segments
+     * @return a map of text IDs to maps of segment counts to segmentations
+     */
+    public Map<String,SortedMap<Integer,Segmentation>> segmentAll(
+            final double α, final int maxSegments) {
+        checkArgument(maxSegments > 0, "max segments must be > 0; was %s", maxSegments);
+        log.log(Level.INFO, "Segmenting texts into up to {0} segments with α={1}...",
+                new Object[]{maxSegments, α});
+
+        return this.documents.keySet().parallelStream()
+                .map(key -> {
+                    final DPDocument doc = this.documents.get(key);
+                    final int numSegments = Math.min(maxSegments, doc.sentenceCount);
+                    final int maxLength = maxSegmentLengthOf(key, doc, numSegments);
+
+                    log.log(Level.INFO, "Segmenting {0}...", key);
+                    DPKernel kernel = dynamicProgram(key, doc, numSegments, 
+                            maxLength, α, false, cachedStatistics());
+                    ImmutableSortedMap.Builder<Integer,Segmentation> segmentations =
+                            ImmutableSortedMap.naturalOrder();
+                    for (int k = 1; k <= numSegments; k++) {
+                        Segmentation segmentation = kernel.backtrack(k);
+                        if (segmentation != null) {
+                            segmentations.put(k, segmentation);
+                        }
+                    }
+                    return Maps.immutableEntry(key, 
+                            (SortedMap<Integer,Segmentation>) segmentations.build());
+                })
+                .collect(Utils.toImmutableMap());
+    }
+
+    /**
+     *
+     * @return the IDs of the texts being segmented
+     */
+    public Set<String> getTextIDs() {
+        return this.documents.keySet();
+    }
+
     /**
      *
      * @return a map of text IDs to segmentations
@@ -120,136 +840,187 @@ public class DPSeg {
 
     /**
      * Estimates the parameters using a form of hard EM it computes the
-     * best segmentation given the current parameters, then does a
-     * gradient-based search for new parameters, and iterates.
+     * best segmentation given the current parameters, then uses the
+     * {@link ConcentrationEstimator} to find new parameters, and iterates
+     * until no segmentation changes. Afterwards the texts are segmented
+     * with the estimate.
      *
      * @param α initial concentration parameter
      * @return the new estimate of the concentration parameter
      */
     public double estimateConcentrationParameter(final double α) {
+        checkState(this.segmentCounts.keySet().containsAll(this.documents.keySet()),
+                "segment counts are required for every text");
         
-        segment(α);
-
-        Optimizable optimizable = new Optimizable(α); 
-        LimitedMemoryBFGS optimizer = new LimitedMemoryBFGS(optimizable);
-        
-        int iteration = 0;
-        double logLikelihood = -Double.MAX_VALUE;
-        double improvement;
-        
-        do {
-            try {
-                optimizer.optimize();
-            } catch (OptimizationException e) {
-                // Line search could not step in the current direction. This is 
-                // not necessarily cause for alarm. Sometimes this happens close 
-                // to the maximum, where the function may be very flat. So we 
-                // assume it means we have converged.
-                break;
-            }
-            improvement = optimizable.logLikelihood - logLikelihood;
-            logLikelihood = optimizable.logLikelihood;
-
-            segment(optimizable.α);
-            optimizer.reset();
-
-            iteration++;
-            
-        } while (improvement > 0 && iteration++ < 20);
-        
-        return Math.exp(optimizable.lnα);
+        Map.Entry<Double,ImmutableMap<String,Segmentation>> estimate = estimateGroup(
+                "all texts", this.documents.keySet(), α, statisticsForCall());
+        this.segmentations = estimate.getValue();
+        return estimate.getKey();
     }
 
     /**
-     * Given a concentration parameter for the Dirichlet multinomial, calculate
-     * the log-likelihood across all documents. This is the objective function
-     * being maximized by the optimizer.
-     * 
-     * @param α concentration parameter
-     * @return the log-likelihood across all documents
+     * Estimates a concentration parameter for each text separately, using
+     * the same hard EM procedure as {@link #estimateConcentrationParameter}.
+     *
+     * @param α initial concentration parameter
+     * @return a map of text IDs to their estimated concentration parameters
      */
-    private double computeTotalLogLikelihood(final double α) {
-        return this.computeOverDocuments((int[] counts) ->
-                DirichletMultinomial.logLikelihood(α, counts));
+    public Map<String,Double> estimateConcentrationParameters(final double α) {
+        return estimateConcentrationParameters(α, this.documents.keySet().stream()
+                .map(key -> Maps.immutableEntry(key, key))
+                .collect(Utils.toImmutableMap()));
     }
 
     /**
-     * Given a concentration parameter for the Dirichlet multinomial, calculate
-     * the gradient of the log-likelihood across all documents. This is the
-     * gradient of the objective function being maximized by the optimizer.
-     * 
-     * @param α concentration parameter
-     * @return the gradient of the log-likelihood across all documents
+     * Estimates a concentration parameter for each group of texts, using the
+     * same hard EM procedure as {@link #estimateConcentrationParameter}. The
+     * groups are estimated independently and in parallel, and each one stops
+     * as soon as the segmentations of its texts no longer change. Afterwards
+     * each text is segmented with the estimate for its group. The
+     * segment statistics of each document are bounded by
+     * {@link #setMaxStatisticsSize(long) the maximum size}, and unless they
+     * are cached they are discarded when the estimate for its group is done.
+     *
+     * @param α initial concentration parameter
+     * @param groups a map of text IDs to the names of their groups
+     * @return a map of text IDs to the estimated concentration parameters of
+     * their groups
      */
-    private double computeGradient(final double α) {
-        return this.computeOverDocuments((int[] counts) ->
-                DirichletMultinomial.logLikelihoodGradient(α, counts));
+    public Map<String,Double> estimateConcentrationParameters(
+            final double α, Map<String,String> groups) {
+        checkArgument(groups.keySet().equals(this.documents.keySet()),
+                "every text must be assigned to a group");
+        checkState(this.segmentCounts.keySet().containsAll(this.documents.keySet()),
+                "segment counts are required for every text");
+        log.log(Level.INFO, "Estimating α for {0} groups of texts...",
+                new HashSet<>(groups.values()).size());
+
+        Map<String,List<String>> members = groups.keySet().stream()
+                .collect(Collectors.groupingBy(groups::get));
+        // Unless statistics are cached, each group keeps its own statistics,
+        // so that they are discarded as soon as its estimate is done.
+        List<Map.Entry<Double,ImmutableMap<String,Segmentation>>> estimates = 
+                this.pool.submit(() -> members.entrySet().parallelStream()
+                        .map(e -> estimateGroup(e.getKey(), e.getValue(), α, 
+                                statisticsForCall()))
+                        .collect(Collectors.toList()))
+                .join();
+
+        this.segmentations = estimates.stream()
+                .flatMap(e -> e.getValue().entrySet().stream())
+                .collect(Utils.toImmutableMap());
+        return estimates.stream()
+                .flatMap(e -> e.getValue().keySet().stream()
+                        .map(key -> Maps.immutableEntry(key, e.getKey())))
+                .collect(Utils.toImmutableMap());
     }
-    
-    private double computeOverDocuments(ToDoubleFunction<int[]> f) {
-        return this.documents.entrySet().stream()
-                .mapToDouble(e ->
-                        this.segmentations.get(e.getKey()).stream()
-                                .map(e.getValue()::countWordsInSegment)
-                                .mapToDouble(f)
-                                .sum())
-                .sum();
-    }
-
-    private class Optimizable 
-    implements cc.mallet.optimize.Optimizable.ByGradientValue {
-
-        private double α;
-        private double lnα;
-        private double logLikelihood;
-        
-        private Optimizable(double α) {
-            this.α = α;
-            this.lnα = Math.log(α);
-        }
-        
-        @Override
-        public double getValue() {
-            this.logLikelihood = computeTotalLogLikelihood(this.α);
-            return this.logLikelihood;
-        }
 
-        @Override
-        public void getValueGradient(double[] gradient) {
-            gradient[0] = computeGradient(this.α);
-        }
+    /**
+     * Estimate a concentration parameter for a group of texts by hard EM,
+     * starting each estimate from the previous one. The texts whose 
+     * segmentations changed are tracked between iterations, and only their
+     * contributions to the objective function are recomputed. Stops when no
+     * segmentation changed, when the log-likelihood no longer improves, or 
+     * after {@link #MAX_EM_ITERATIONS} iterations.
+     *
+     * @param name a name for the group, for logging
+     * @param statistics a cache of segment statistics
+     * @return the estimate and the segmentations of the texts with it
+     */
+    private Map.Entry<Double,ImmutableMap<String,Segmentation>> estimateGroup(
+            String name, Collection<String> keys, double α,
+            ConcurrentMap<String,SegmentStatistics> statistics) {
+        ImmutableMap<String,Segmentation> segmentations = segmentGroup(keys, α, statistics);
+        Map<String,DCMObjective.Builder> summaries = new HashMap<>();
+        Set<String> changed = ImmutableSet.copyOf(keys);
+        double logLikelihood = -Double.MAX_VALUE;
+        int iteration = 0;
+        while (!changed.isEmpty() && iteration < MAX_EM_ITERATIONS) {
+            iteration++;
+            long start = System.nanoTime();
 
-        @Override
-        public int getNumParameters() {
-            return 1;
-        }
+            final ImmutableMap<String,Segmentation> previous = segmentations;
+            summaries.putAll(changed.parallelStream()
+                    .map(key -> Maps.immutableEntry(key, 
+                            summarize(key, previous.get(key), statistics)))
+                    .collect(Utils.toImmutableMap()));
+            DCMObjective.Builder objective = new DCMObjective.Builder();
+            summaries.values().forEach(objective::addAll);
 
-        @Override
-        public void getParameters(double[] parameters) {
-            parameters[0] = this.lnα;
-        }
+            ConcentrationEstimator.Estimate estimate = 
+                    this.estimator.maximize(objective.build(), α);
+            log.log(Level.FINE, "Estimated {0} for {1}", new Object[]{estimate, name});
+            α = estimate.α;
+
+            segmentations = segmentGroup(keys, α, statistics);
+            final ImmutableMap<String,Segmentation> next = segmentations;
+            changed = keys.stream()
+                    .filter(key -> !next.get(key).equals(previous.get(key)))
+                    .collect(Utils.toImmutableSet());
+
+            log.log(Level.INFO, "EM iteration {0} for {1}: α={2}, {3} of {4} "
+                    + "segmentations changed, {5} ms", new Object[]{
+                        iteration, name, α, changed.size(), keys.size(),
+                        (System.nanoTime() - start) / 1000000});
 
-        @Override
-        public double getParameter(int index) {
-            checkArgument(index==0);
-            return this.lnα;
+            if (estimate.value <= logLikelihood) {
+                break;
+            }
+            logLikelihood = estimate.value;
         }
+        return Maps.immutableEntry(α, segmentations);
+    }
+
+    /**
+     * Summarize the segments of a segmentation of a text, for computing
+     * their log-likelihood and its derivatives at any concentration
+     * parameter. Summaries of texts are combined into the objective 
+     * function being maximized by the estimator. Segment statistics are 
+     * taken from the cache when possible.
+     * 
+     * @param key a text ID
+     * @param segmentation a segmentation of the text
+     * @param statistics a cache of segment statistics
+     * @return the summary
+     */
+    private DCMObjective.Builder summarize(String key, Segmentation segmentation,
+            ConcurrentMap<String,SegmentStatistics> statistics) {
+        DCMObjective.Builder builder = new DCMObjective.Builder();
+        DPDocument doc = this.documents.get(key);
+        SegmentStatistics cached = statistics.get(key);
+        segmentation.stream().forEach(segment -> {
+            if (cached != null && segment.length <= cached.rowLength(segment.start)) {
+                cached.addTo(builder, segment.start, segment.length);
+            } else {
+                builder.add(doc.sparseCountsInSegment(segment));
+            }
+        });
+        return builder;
+    }
 
-        @Override
-        public void setParameters(double[] parameters) {
-            this.lnα = parameters[0];
-            this.α = Math.exp(parameters[0]);
+    /**
+     * The segment scores of a document and the dynamic program table over
+     * them, kept for extending when sentences are appended to the document.
+     */
+    private static class Lattice {
+        final SegmentScores segLLs;
+        final DPKernel kernel;
+
+        Lattice(SegmentScores segLLs, DPKernel kernel) {
+            this.segLLs = segLLs;
+            this.kernel = kernel;
         }
 
-        @Override
-        public void setParameter(int index, double parameter) {
-            checkArgument(index==0);
-            this.lnα = parameter;
-            this.α = Math.exp(parameter);
+        /**
+         * @return whether this lattice can be extended to segment the given
+         * document, which is this one or was made by appending sentences to
+         * it, into the given number of segments
+         */
+        boolean isExtendedBy(DPDocument doc, int numSegments, double α) {
+            return this.segLLs.α == α
+                    && numSegments <= this.kernel.numSegments()
+                    && doc.isExtensionOf(this.segLLs.doc);
         }
-        
     }
-    
-
 
 }
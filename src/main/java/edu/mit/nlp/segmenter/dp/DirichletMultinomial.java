@@ -1,57 +1,121 @@
-package edu.mit.nlp.segmenter.dp;
-
-import java.util.Arrays;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.function.IntToDoubleFunction;
-import org.apache.commons.math3.special.Gamma;
-
-/**
- *
- * @author Ryan Shaw <ryanshaw@unc.edu>
- */
-public interface DirichletMultinomial {
-
-    static final ConcurrentMap<Double,Double> cache = new ConcurrentHashMap<>(10000);
-
-    /**
-     * Calculate the log-likelihood of the given vector of category counts.
-     *
-     * @param α concentration parameter
-     * @param counts vector of category counts
-     * @return the log-likelihood
-     */
-    static double logLikelihood(double α, int[] counts) {
-        int K = counts.length;
-        double A = K * α;
-        int N = Arrays.stream(counts).sum();
-        return -(lnΓ(A + N) - lnΓ(A)) + sumOver(counts, x -> lnΓ(α + x) - lnΓ(α));
-    }
-
-    /**
-     * Calculate the gradient (derivative) of the log-likelihood of the the
-     * given vector of category counts.
-     *
-     * @param α concentration parameter
-     * @param counts vector of category counts
-     * @return the gradient of the log-likelihood
-     */
-    static double logLikelihoodGradient(double α, int[] counts) {
-        int K = counts.length;
-        double A = K * α;
-        int N = Arrays.stream(counts).sum();
-        return α * (K * (ψ(A) - ψ(N + A) - ψ(α)) + sumOver(counts, x -> ψ(x + α)));
-    }
-
-    static double sumOver(int[] xs, IntToDoubleFunction f) {
-        return Arrays.stream(xs).mapToDouble(f).sum();
-    }
-
-    static double lnΓ(double x) {
-        return cache.computeIfAbsent(x, Gamma::logGamma);
-    }
-
-    static double ψ(double x) {
-        return Gamma.digamma(x);
-    }
-}
+package edu.mit.nlp.segmenter.dp;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+import org.apache.commons.math3.special.Gamma;
+
+/**
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public interface DirichletMultinomial {
+
+    /**
+     * Calculate the log-likelihood of the given vector of category counts.
+     *
+     * @param α concentration parameter
+     * @param counts vector of category counts
+     * @return the log-likelihood
+     */
+    static double logLikelihood(double α, int[] counts) {
+        int K = counts.length;
+        double A = K * α;
+        int N = Arrays.stream(counts).sum();
+        return -(lnΓ(A + N) - lnΓ(A)) + sumOver(counts, x -> lnΓ(α + x) - lnΓ(α));
+    }
+
+    /**
+     * Calculate the log-likelihood of the given sparse vector of category
+     * counts. Categories with a count of 0 contribute nothing beyond the total
+     * number of categories K, so only the nonzero counts are visited.
+     *
+     * @param α concentration parameter
+     * @param counts sparse vector of category counts
+     * @return the log-likelihood
+     */
+    static double logLikelihood(double α, SparseCounts counts) {
+        double A = counts.K * α;
+        return -(lnΓ(A + counts.N) - lnΓ(A))
+                + sumOver(counts.counts, x -> lnΓ(α + x) - lnΓ(α));
+    }
+
+    /**
+     * Calculate the log-likelihood of the given sparse vector of category
+     * counts, looking up lnΓ differences in precomputed tables rather than
+     * evaluating lnΓ.
+     *
+     * @param counts sparse vector of category counts
+     * @param tables lnΓ differences for the concentration parameter and
+     * number of categories, covering counts up to counts.N
+     * @return the log-likelihood
+     */
+    static double logLikelihood(SparseCounts counts, DCMTables tables) {
+        double sum = -tables.lengthTerms[counts.N];
+        for (int count : counts.counts) {
+            sum += tables.countTerms[count];
+        }
+        return sum;
+    }
+
+    /**
+     * Calculate the gradient (derivative) of the log-likelihood of the the
+     * given vector of category counts.
+     *
+     * @param α concentration parameter
+     * @param counts vector of category counts
+     * @return the gradient of the log-likelihood
+     */
+    static double logLikelihoodGradient(double α, int[] counts) {
+        int K = counts.length;
+        double A = K * α;
+        int N = Arrays.stream(counts).sum();
+        return α * (K * (ψ(A) - ψ(N + A) - ψ(α)) + sumOver(counts, x -> ψ(x + α)));
+    }
+
+    /**
+     * Calculate the gradient (derivative) of the log-likelihood of the the
+     * given sparse vector of category counts. Only the nonzero counts are
+     * visited.
+     *
+     * @param α concentration parameter
+     * @param counts sparse vector of category counts
+     * @return the gradient of the log-likelihood
+     */
+    static double logLikelihoodGradient(double α, SparseCounts counts) {
+        double A = counts.K * α;
+        return α * (counts.K * (ψ(A) - ψ(counts.N + A))
+                + sumOver(counts.counts, x -> ψ(x + α) - ψ(α)));
+    }
+
+    static double sumOver(int[] xs, IntToDoubleFunction f) {
+        return Arrays.stream(xs).mapToDouble(f).sum();
+    }
+
+    static double lnΓ(double x) {
+        return Gamma.logGamma(x);
+    }
+
+    /**
+     * Build a table of lnΓ(x+n) − lnΓ(x) for n from 0 to maxN.
+     *
+     * @param x
+     * @param maxN the largest n
+     * @return the table, indexed by n
+     */
+    static double[] lnΓDifferences(double x, int maxN) {
+        double[] table = new double[maxN + 1];
+        double lnΓx = lnΓ(x);
+        for (int n = 1; n <= maxN; n++) {
+            table[n] = lnΓ(x + n) - lnΓx;
+        }
+        return table;
+    }
+
+    static double ψ(double x) {
+        return Gamma.digamma(x);
+    }
+
+    static double ψ1(double x) {
+        return Gamma.trigamma(x);
+    }
+}
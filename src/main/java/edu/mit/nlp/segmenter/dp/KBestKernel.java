@@ -0,0 +1,188 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import com.google.common.collect.ImmutableList;
+import in.aesh.segment.Segment;
+import in.aesh.segment.Segmentation;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * KBestKernel runs a dynamic program that finds the best few segmentations
+ * of a document into exactly a given number of segments. It is like
+ * {@link DPKernel}, but each cell keeps the scores of its best partial
+ * segmentations rather than only the best one, each with a back-pointer to
+ * the start of its last segment and the rank of the partial segmentation it
+ * extends. Segmentations are only read out on request, by following these
+ * back-pointers. Finding the best n costs about n times as much as the
+ * dynamic program for the single best segmentation, but the segment scores
+ * are only computed once.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class KBestKernel {
+
+    /**
+     * The number of DP cells to maximize over in one fork/join task.
+     */
+    private static final int CELL_GRAIN = 64;
+
+    /**
+     * The number of partial segmentations kept for each cell.
+     */
+    private final int n;
+
+    /**
+     * Scores, indexed by [numSegments][end*n + rank]: the scores of the best
+     * segmentations of the first end sentences into numSegments segments, 
+     * in decreasing order, padded with negative infinity.
+     */
+    private final double[][] scores;
+
+    /**
+     * Back-pointers, indexed like {@link #scores}: the start of the last
+     * segment of each partial segmentation, or -1 if there is none.
+     */
+    private final int[][] starts;
+
+    /**
+     * Back-pointers, indexed like {@link #scores}: the rank of the partial
+     * segmentation ending at the start of the last segment.
+     */
+    private final int[][] ranks;
+
+    private final int numSegments;
+    private final int sentenceCount;
+
+    /**
+     * Run the dynamic program.
+     *
+     * @param segLLs segment scores of the document
+     * @param numSegments the number of segments
+     * @param n the number of segmentations to find
+     * @param pool a pool to split each layer across, or null to run on the
+     * calling thread
+     */
+    KBestKernel(SegmentScores segLLs, int numSegments, int n, ForkJoinPool pool) {
+        checkArgument(numSegments > 0, "number of segments must be > 0; was %s", numSegments);
+        checkArgument(n > 0, "number of segmentations must be > 0; was %s", n);
+        final int T = segLLs.doc.sentenceCount;
+        this.n = n;
+        this.numSegments = numSegments;
+        this.sentenceCount = T;
+        this.scores = new double[numSegments+1][];
+        this.starts = new int[numSegments+1][];
+        this.ranks = new int[numSegments+1][];
+
+        this.scores[0] = new double[(T+1) * n];
+        Arrays.fill(this.scores[0], Double.NEGATIVE_INFINITY);
+        this.scores[0][0] = 0;
+
+        for (int i = 1; i <= numSegments; i++) {
+            final double[] from = this.scores[i-1];
+            final double[] to = new double[(T+1) * n];
+            final int[] toStarts = new int[(T+1) * n];
+            final int[] toRanks = new int[(T+1) * n];
+            Arrays.fill(to, Double.NEGATIVE_INFINITY);
+            Arrays.fill(toStarts, -1);
+            this.scores[i] = to;
+            this.starts[i] = toStarts;
+            this.ranks[i] = toRanks;
+            // The segments after this one need at least one sentence each.
+            int lastEnd = T - (numSegments-i);
+            final int layer = i;
+            RangeTask.Action maximize = (first, last) -> {
+                for (int end = first; end < last; end++) {
+                    int cell = end * n;
+                    for (int start = Math.max(layer-1, end-segLLs.maxLength); start < end; start++) {
+                        double segLL = segLLs.get(start, end-start);
+                        for (int rank = 0; rank < n; rank++) {
+                            double score = from[start*n + rank] + segLL;
+                            // Partial scores are sorted, so nothing later
+                            // from this start can make the list either.
+                            if (!(score > to[cell + n-1])) {
+                                break;
+                            }
+                            insert(to, toStarts, toRanks, cell, score, start, rank);
+                        }
+                    }
+                }
+            };
+            if (pool != null) {
+                pool.invoke(new RangeTask(i, lastEnd+1, CELL_GRAIN, maximize));
+            } else {
+                maximize.apply(i, lastEnd+1);
+            }
+            // Only the scores of the previous layer are needed to fill the
+            // next one, but every layer's back-pointers are needed later.
+            if (i > 1) {
+                this.scores[i-1] = null;
+            }
+        }
+    }
+
+    /**
+     * Insert a partial segmentation into the sorted list of a cell,
+     * dropping the worst one.
+     */
+    private void insert(double[] scores, int[] starts, int[] ranks, int cell,
+            double score, int start, int rank) {
+        int i = cell + this.n - 1;
+        while (i > cell && scores[i-1] < score) {
+            scores[i] = scores[i-1];
+            starts[i] = starts[i-1];
+            ranks[i] = ranks[i-1];
+            i--;
+        }
+        scores[i] = score;
+        starts[i] = start;
+        ranks[i] = rank;
+    }
+
+    /**
+     * @return the number of segmentations of the document found, which is
+     * fewer than were asked for if there are fewer possible segmentations
+     */
+    int size() {
+        int count = 0;
+        while (count < this.n && score(count) > Double.NEGATIVE_INFINITY) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param rank a rank, starting from 0 for the best
+     * @return the score of the segmentation of the document with that rank,
+     * or negative infinity if there is none
+     */
+    double score(int rank) {
+        checkElementIndex(rank, this.n);
+        return this.scores[this.numSegments][this.sentenceCount * this.n + rank];
+    }
+
+    /**
+     * Working backward from the end of the document, build the segmentation
+     * with the given rank.
+     *
+     * @param rank a rank, starting from 0 for the best
+     * @return the segmentation, or null if there is none
+     */
+    Segmentation backtrack(int rank) {
+        checkElementIndex(rank, this.n);
+        Segment[] segments = new Segment[this.numSegments];
+        int end = this.sentenceCount;
+        for (int k = this.numSegments; k > 0; k--) {
+            int cell = end * this.n + rank;
+            int start = this.starts[k][cell];
+            if (start < 0) {
+                return null;
+            }
+            segments[k-1] = new Segment(start, end-start);
+            rank = this.ranks[k][cell];
+            end = start;
+        }
+        return new Segmentation(ImmutableList.copyOf(segments));
+    }
+}
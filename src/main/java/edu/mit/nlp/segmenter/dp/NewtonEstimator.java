@@ -0,0 +1,99 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import org.apache.commons.math3.analysis.solvers.BrentSolver;
+
+/**
+ * NewtonEstimator maximizes the log-likelihood over ln α using Newton's
+ * method with the second derivative, which usually converges in a handful
+ * of iterations. A Newton step is only taken where the objective is
+ * concave, and is limited in size. Once a maximum is bracketed by points
+ * where the gradient changes sign, any step leaving the bracket falls back
+ * to Brent's method for the root of the gradient within it. Where the
+ * objective is not concave the search steps uphill until it brackets a 
+ * maximum.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public class NewtonEstimator implements ConcentrationEstimator {
+
+    /**
+     * The largest change in ln α in any one step.
+     */
+    private static final double MAX_STEP = 2;
+
+    private final double tolerance;
+    private final int maxIterations;
+
+    /**
+     * Construct an estimator that stops when ln α changes by less than
+     * 1e-9 or after 100 iterations.
+     */
+    public NewtonEstimator() {
+        this(1e-9, 100);
+    }
+
+    /**
+     * @param tolerance stop when ln α changes by less than this
+     * @param maxIterations stop after this many iterations
+     */
+    public NewtonEstimator(double tolerance, int maxIterations) {
+        checkArgument(tolerance > 0, "tolerance must be > 0; was %s", tolerance);
+        checkArgument(maxIterations > 0,
+                "max iterations must be > 0; was %s", maxIterations);
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    @Override
+    public Estimate maximize(Objective objective, double α) {
+        checkArgument(α > 0, "α must be > 0; was %s", α);
+        double lnα = Math.log(α);
+        // Bounds on ln α where the gradient is known to be positive (below)
+        // and negative (above).
+        double below = Double.NEGATIVE_INFINITY;
+        double above = Double.POSITIVE_INFINITY;
+        int iterations = 0;
+        while (iterations < this.maxIterations) {
+            iterations++;
+            double gradient = objective.gradient(Math.exp(lnα));
+            if (gradient == 0) {
+                break;
+            }
+            if (gradient > 0) {
+                below = lnα;
+            } else {
+                above = lnα;
+            }
+            double curvature = objective.curvature(Math.exp(lnα));
+            double step = curvature < 0
+                    ? -gradient / curvature
+                    : Math.copySign(MAX_STEP, gradient);
+            step = Math.max(-MAX_STEP, Math.min(MAX_STEP, step));
+            if (lnα + step <= below || lnα + step >= above) {
+                return brent(objective, below, above, iterations);
+            }
+            lnα += step;
+            if (Math.abs(step) < this.tolerance) {
+                break;
+            }
+        }
+        α = Math.exp(lnα);
+        return new Estimate(α, objective.value(α), iterations);
+    }
+
+    /**
+     * Find the root of the gradient between two values of ln α where it has
+     * opposite signs. Each evaluation by Brent's method counts as an
+     * iteration.
+     */
+    private Estimate brent(Objective objective, double below, double above, 
+            int iterations) {
+        BrentSolver solver = new BrentSolver(this.tolerance);
+        double lnα = solver.solve(this.maxIterations, 
+                x -> objective.gradient(Math.exp(x)), below, above);
+        double α = Math.exp(lnα);
+        return new Estimate(α, objective.value(α), 
+                iterations + solver.getEvaluations());
+    }
+}
@@ -0,0 +1,117 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import in.aesh.segment.Segment;
+import in.aesh.segment.Segmentation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PenalizedDP finds the segmentation of a document that maximizes the total
+ * DCM log-likelihood of its segments minus a fixed penalty per segment, so
+ * that the number of segments is chosen rather than given. (A per-segment
+ * penalty β is equivalent to a geometric prior on the number of segments.)
+ *
+ * <p>The dynamic program has one dimension, the best score F(t) of each
+ * prefix of t sentences, and uses PELT-style pruning (Killick, Fearnhead
+ * &amp; Eckley 2012): a candidate start s is dropped once
+ * F(s) + LL(s,t) + margin &lt; F(t), since it can then never begin the last
+ * segment of a better segmentation. With a margin of 0 this assumes that
+ * merging two adjacent segments never increases their log-likelihood, which
+ * the DCM does not guarantee, so pruning is approximate; a larger margin
+ * trades speed for exactness. Typically only a few recent candidates
+ * survive, so the cost is close to linear in the number of sentences.</p>
+ *
+ * <p>Each surviving candidate keeps a running sum of lnΓ terms that is
+ * updated from the cumulative counts of the words in each new sentence and
+ * a table of lnΓ differences, so no per-candidate count vectors are
+ * needed.</p>
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class PenalizedDP {
+
+    private PenalizedDP() {}
+
+    /**
+     * @param doc the document to segment
+     * @param α concentration parameter
+     * @param penalty the penalty per segment, in units of log-likelihood
+     * @param maxLength the maximum segment length in sentences
+     * @param margin the slack allowed before pruning a candidate start
+     * @return the best penalized segmentation
+     */
+    static Segmentation bestSegmentationOf(DPDocument doc, double α, 
+            double penalty, int maxLength, double margin) {
+        checkArgument(doc.sentenceCount > 0, "cannot segment an empty document");
+        checkArgument(maxLength > 0, "max length must be > 0; was %s", maxLength);
+        checkArgument(margin >= 0, "pruning margin must be >= 0; was %s", margin);
+
+        final int T = doc.sentenceCount;
+        final DCMTables tables = new DCMTables(
+                α, doc.vocabulary.size(), doc.maxTokenCount(maxLength));
+        final double[] countTerms = tables.countTerms;
+
+        double[] bestScores = new double[T+1];
+        int[] bestStarts = new int[T+1];
+
+        // surviving candidate starts and their running sums of lnΓ terms
+        int[] candidates = new int[T+1];
+        double[] sums = new double[T+1];
+        double[] scores = new double[T+1];
+        int candidateCount = 0;
+
+        for (int t = 1; t <= T; t++) {
+            candidates[candidateCount] = t-1;
+            sums[candidateCount] = 0;
+            candidateCount++;
+
+            SparseCounts sentence = doc.sparseCountsInSegment(new Segment(t-1, 1));
+            int[] cumulative = doc.cumulativeCounts[t-1];
+
+            double bestScore = Double.NEGATIVE_INFINITY;
+            int bestStart = -1;
+            for (int c = 0; c < candidateCount; c++) {
+                int s = candidates[c];
+                int[] before = doc.cumulativeCounts[s];
+                for (int j = 0; j < sentence.size(); j++) {
+                    int id = sentence.ids[j];
+                    int count = countAt(cumulative, id) - countAt(before, id);
+                    sums[c] += countTerms[count + sentence.counts[j]] - countTerms[count];
+                }
+                int N = doc.sentenceOffsets[t] - doc.sentenceOffsets[s];
+                double segLL = -tables.lengthTerms[N] + sums[c];
+                scores[c] = bestScores[s] + segLL;
+                if (scores[c] - penalty > bestScore) {
+                    bestScore = scores[c] - penalty;
+                    bestStart = s;
+                }
+            }
+            bestScores[t] = bestScore;
+            bestStarts[t] = bestStart;
+
+            // prune candidates that can no longer start the last segment
+            int kept = 0;
+            for (int c = 0; c < candidateCount; c++) {
+                if (scores[c] + margin >= bestScore && t - candidates[c] < maxLength) {
+                    candidates[kept] = candidates[c];
+                    sums[kept] = sums[c];
+                    kept++;
+                }
+            }
+            candidateCount = kept;
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (int end = T; end > 0; end = bestStarts[end]) {
+            segments.add(new Segment(bestStarts[end], end - bestStarts[end]));
+        }
+        Collections.reverse(segments);
+        return new Segmentation(segments);
+    }
+
+    private static int countAt(int[] counts, int id) {
+        return id < counts.length ? counts[id] : 0;
+    }
+}
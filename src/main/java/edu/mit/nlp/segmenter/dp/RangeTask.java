@@ -0,0 +1,54 @@
+package edu.mit.nlp.segmenter.dp;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * RangeTask applies an action to a range of integer indexes by recursively
+ * splitting the range in half until each piece is no larger than a given
+ * grain size, so that the pieces can be run in parallel on a
+ * {@link java.util.concurrent.ForkJoinPool}.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * An action to be applied to each piece [from, to) of a range.
+     */
+    @FunctionalInterface
+    interface Action {
+        void apply(int from, int to);
+    }
+
+    private final int from;
+    private final int to;
+    private final int grain;
+    private final Action action;
+
+    /**
+     * @param from the first index of the range
+     * @param to one more than the last index of the range
+     * @param grain the largest piece of the range to apply the action to
+     * without splitting further
+     * @param action the action to apply
+     */
+    RangeTask(int from, int to, int grain, Action action) {
+        this.from = from;
+        this.to = to;
+        this.grain = Math.max(1, grain);
+        this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+        if (this.to - this.from <= this.grain) {
+            this.action.apply(this.from, this.to);
+        } else {
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new RangeTask(this.from, middle, this.grain, this.action),
+                      new RangeTask(middle, this.to, this.grain, this.action));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package edu.mit.nlp.segmenter.dp;
+
+import in.aesh.segment.Segmentation;
+
+/**
+ * A segmentation of a text together with its log-likelihood.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public final class ScoredSegmentation {
+
+    public final Segmentation segmentation;
+    public final double score;
+
+    public ScoredSegmentation(Segmentation segmentation, double score) {
+        this.segmentation = segmentation;
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s)", this.segmentation, this.score);
+    }
+}
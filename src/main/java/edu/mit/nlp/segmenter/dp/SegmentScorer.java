@@ -0,0 +1,142 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * SegmentScorer computes the DCM log-likelihoods of all the segments of a
+ * document that begin at a given sentence, by extending a segment one
+ * sentence at a time. Running word counts and the running sum of lnΓ terms
+ * are updated using only the tokens of the appended sentence, by looking up
+ * lnΓ(α+c+1) − lnΓ(α+c) in precomputed {@link DCMTables}, so scoring every
+ * segment that starts at a given sentence costs time proportional to the
+ * number of tokens in the longest such segment, rather than to the number of
+ * segments times the vocabulary size. Segments can likewise be scored by
+ * end sentence, extending them backward one sentence at a time.
+ *
+ * <p>A scorer holds a vector of counts as long as the document vocabulary and
+ * is not safe for use by multiple threads.</p>
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class SegmentScorer {
+
+    private final DPDocument doc;
+    private final double[] countTerms;
+    private final double[] lengthTerms;
+    private final int[] counts;
+
+    private int start;
+    private int end;
+    private int N;
+    private double sumLnΓ;
+
+    /**
+     * @param doc the document whose segments are to be scored
+     * @param α concentration parameter
+     */
+    SegmentScorer(DPDocument doc, double α) {
+        this(doc, new DCMTables(α, doc.vocabulary.size(), doc.tokens.length));
+    }
+
+    /**
+     * @param doc the document whose segments are to be scored
+     * @param tables lnΓ differences for the document, covering the token
+     * counts of the longest segments to be scored
+     */
+    SegmentScorer(DPDocument doc, DCMTables tables) {
+        checkArgument(tables.K == doc.vocabulary.size(),
+                "tables are for %s categories, but vocabulary size is %s",
+                tables.K, doc.vocabulary.size());
+        this.doc = doc;
+        this.countTerms = tables.countTerms;
+        this.lengthTerms = tables.lengthTerms;
+        this.counts = new int[doc.vocabulary.size()];
+    }
+
+    /**
+     * Begin scoring segments that start at the given sentence. The current
+     * segment is empty until {@link #extend()} is called.
+     *
+     * @param start index of the first sentence of the segments to be scored
+     */
+    void reset(int start) {
+        checkElementIndex(start, this.doc.sentenceCount);
+        for (int i = this.doc.sentenceOffsets[this.start];
+                i < this.doc.sentenceOffsets[this.end]; i++) {
+            this.counts[this.doc.tokens[i]] = 0;
+        }
+        this.start = start;
+        this.end = start;
+        this.N = 0;
+        this.sumLnΓ = 0;
+    }
+
+    /**
+     * Begin scoring segments that end just before the given sentence, by
+     * extending them backward with {@link #prepend()}. The current segment
+     * is empty until then.
+     *
+     * @param end index of the sentence after the segments to be scored
+     */
+    void resetEnd(int end) {
+        checkPositionIndex(end, this.doc.sentenceCount);
+        reset(0);
+        this.start = end;
+        this.end = end;
+    }
+
+    /**
+     * Append the next sentence to the current segment.
+     *
+     * @return the log-likelihood of the extended segment
+     */
+    double extend() {
+        checkState(this.end < this.doc.sentenceCount,
+                "cannot extend segment past end of document");
+        int from = this.doc.sentenceOffsets[this.end];
+        int to = this.doc.sentenceOffsets[this.end + 1];
+        for (int i = from; i < to; i++) {
+            int c = this.counts[this.doc.tokens[i]]++;
+            this.sumLnΓ += this.countTerms[c+1] - this.countTerms[c];
+        }
+        this.N += to - from;
+        this.end++;
+        return logLikelihood();
+    }
+
+    /**
+     * Prepend the previous sentence to the current segment.
+     *
+     * @return the log-likelihood of the extended segment
+     */
+    double prepend() {
+        checkState(this.start > 0,
+                "cannot extend segment past start of document");
+        int from = this.doc.sentenceOffsets[this.start - 1];
+        int to = this.doc.sentenceOffsets[this.start];
+        for (int i = from; i < to; i++) {
+            int c = this.counts[this.doc.tokens[i]]++;
+            this.sumLnΓ += this.countTerms[c+1] - this.countTerms[c];
+        }
+        this.N += to - from;
+        this.start--;
+        return logLikelihood();
+    }
+
+    /**
+     * @return the log-likelihood of the current segment
+     */
+    double logLikelihood() {
+        return -this.lengthTerms[this.N] + this.sumLnΓ;
+    }
+
+    /**
+     * @return the number of sentences in the current segment
+     */
+    int length() {
+        return this.end - this.start;
+    }
+}
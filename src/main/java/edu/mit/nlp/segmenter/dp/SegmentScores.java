@@ -0,0 +1,233 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * SegmentScores stores the log-likelihood of every segment of a document up
+ * to a maximum length, packed row by row into a single array. Only segments
+ * that fit in the document are stored, so without a maximum length this is
+ * the upper triangle of a (T+1)×(T+1) matrix, and with a maximum length L it
+ * is a band of T·L entries. Each row (all the segments starting at a given
+ * sentence) is scored on first access, either from the words of the
+ * document or, if {@link SegmentStatistics} are given, from the cached
+ * count histograms of the segments.
+ *
+ * <p>Lazy filling is not safe for use by multiple threads; call
+ * {@link #fill(int)} for every row first if scores are to be read
+ * concurrently.</p>
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class SegmentScores {
+
+    final DPDocument doc;
+    final double α;
+    final int maxLength;
+
+    /**
+     * The offset into {@link #scores} of each row, plus a final entry for the
+     * end of the last row.
+     */
+    private final int[] rowOffsets;
+    private final double[] scores;
+    private final boolean[] filled;
+    private SegmentScorer scorer;
+
+    private final SegmentStatistics statistics;
+    private final DCMTables tables;
+
+    /**
+     * @param doc the document whose segments are to be scored
+     * @param maxLength the maximum length of segments to be scored
+     * @param α concentration parameter
+     */
+    SegmentScores(DPDocument doc, int maxLength, double α) {
+        this(doc, maxLength, α, null);
+    }
+
+    /**
+     * @param statistics cached statistics of the segments to be scored
+     * @param maxLength the maximum length of segments to be scored, which
+     * must be no more than the maximum length of the cached statistics
+     * @param α concentration parameter
+     */
+    SegmentScores(SegmentStatistics statistics, int maxLength, double α) {
+        this(statistics.doc, maxLength, α, statistics);
+    }
+
+    /**
+     * Extend scores to a document made by appending sentences to the
+     * document they were computed for. The scores of segments of the
+     * previous document are copied rather than rescored. If the appended
+     * sentences added words to the vocabulary, only the lnΓ(Kα+n) terms of
+     * those scores change, so each is adjusted by the difference in those
+     * terms. Segments that begin in a copied row and end in the appended
+     * sentences are scored one end sentence at a time, by extending them
+     * backward, so no row is scored again from its start. Rows beginning in
+     * the appended sentences are scored on first access as usual.
+     *
+     * @param previous scores of the previous document
+     * @param doc the extended document
+     * @param maxLength the maximum length of segments to be scored
+     */
+    SegmentScores(SegmentScores previous, DPDocument doc, int maxLength) {
+        this(doc, maxLength, previous.α, null);
+        checkArgument(doc.isExtensionOf(previous.doc), 
+                "document does not extend the scored document");
+        final int previousCount = previous.doc.sentenceCount;
+        boolean sameVocabulary = doc.vocabulary.size() == previous.doc.vocabulary.size();
+        double[] previousLengthTerms = previous.tables.lengthTerms;
+        double[] lengthTerms = this.tables.lengthTerms;
+        boolean[] partial = new boolean[previousCount];
+        int firstPartial = previousCount;
+        for (int start = 0; start < previousCount; start++) {
+            int length = Math.min(previous.rowLength(start), rowLength(start));
+            boolean complete = length == rowLength(start);
+            // A row cut short by a smaller maximum length is scored again.
+            if (!previous.filled[start] || (!complete && start + length < previousCount)) {
+                continue;
+            }
+            int from = previous.rowOffsets[start];
+            int to = this.rowOffsets[start];
+            System.arraycopy(previous.scores, from, this.scores, to, length);
+            if (!sameVocabulary) {
+                int offset = doc.sentenceOffsets[start];
+                for (int i = 0; i < length; i++) {
+                    int N = doc.sentenceOffsets[start + i + 1] - offset;
+                    this.scores[to + i] += previousLengthTerms[N] - lengthTerms[N];
+                }
+            }
+            if (complete) {
+                this.filled[start] = true;
+            } else {
+                partial[start] = true;
+                firstPartial = Math.min(firstPartial, start);
+            }
+        }
+        if (firstPartial < previousCount) {
+            SegmentScorer columnScorer = newScorer();
+            for (int end = previousCount + 1; end <= doc.sentenceCount; end++) {
+                columnScorer.resetEnd(end);
+                for (int start = end - 1; 
+                        start >= Math.max(firstPartial, end - this.maxLength); start--) {
+                    double score = columnScorer.prepend();
+                    if (start < previousCount && partial[start]) {
+                        this.scores[this.rowOffsets[start] + end - start - 1] = score;
+                    }
+                }
+            }
+            for (int start = firstPartial; start < previousCount; start++) {
+                this.filled[start] |= partial[start];
+            }
+        }
+    }
+
+    private SegmentScores(DPDocument doc, int maxLength, double α, 
+            SegmentStatistics statistics) {
+        checkArgument(maxLength > 0, "max length must be > 0; was %s", maxLength);
+        checkArgument(statistics == null 
+                || statistics.maxLength >= Math.min(maxLength, doc.sentenceCount),
+                "statistics only cover segments up to length %s; %s requested",
+                statistics == null ? 0 : statistics.maxLength, maxLength);
+        this.doc = doc;
+        this.statistics = statistics;
+        this.α = α;
+        this.maxLength = Math.min(maxLength, doc.sentenceCount);
+        this.tables = statistics == null 
+                ? new DCMTables(α, doc.vocabulary.size(), doc.maxTokenCount(this.maxLength))
+                : statistics.tables(α);
+        this.rowOffsets = new int[doc.sentenceCount + 1];
+        long size = 0;
+        for (int start = 0; start < doc.sentenceCount; start++) {
+            this.rowOffsets[start] = (int) size;
+            size += rowLength(start);
+            checkArgument(size <= Integer.MAX_VALUE - 8,
+                    "too many segments to store (%s sentences, max length %s); "
+                    + "try a shorter max segment length",
+                    doc.sentenceCount, maxLength);
+        }
+        this.rowOffsets[doc.sentenceCount] = (int) size;
+        this.scores = new double[(int) size];
+        this.filled = new boolean[doc.sentenceCount];
+    }
+
+    /**
+     * @param start index of the first sentence of a segment
+     * @return the number of segments stored that begin at the given sentence
+     */
+    final int rowLength(int start) {
+        return Math.min(this.maxLength, this.doc.sentenceCount - start);
+    }
+
+    /**
+     * Get the log-likelihood of a segment, scoring the row it belongs to if
+     * necessary.
+     *
+     * @param start index of the first sentence of the segment
+     * @param length number of sentences in the segment
+     * @return the log-likelihood of the segment
+     */
+    double get(int start, int length) {
+        checkElementIndex(length - 1, rowLength(start));
+        if (!this.filled[start]) {
+            fill(start);
+        }
+        return this.scores[this.rowOffsets[start] + length - 1];
+    }
+
+    /**
+     * Score all the segments that begin at the given sentence, if they have
+     * not been scored already.
+     *
+     * @param start index of the first sentence of the segments
+     */
+    void fill(int start) {
+        if (this.scorer == null && this.statistics == null) {
+            this.scorer = newScorer();
+        }
+        fill(start, this.scorer);
+    }
+
+    /**
+     * Score all the segments that begin at the given sentence using the given
+     * scorer. Distinct rows may be filled concurrently using distinct scorers.
+     *
+     * @param start index of the first sentence of the segments
+     * @param scorer a scorer for this document and concentration parameter,
+     * which is not used if cached statistics were given
+     */
+    void fill(int start, SegmentScorer scorer) {
+        if (this.filled[start]) {
+            return;
+        }
+        int offset = this.rowOffsets[start];
+        if (this.statistics != null) {
+            for (int length = 1; length <= rowLength(start); length++) {
+                this.scores[offset + length - 1] = this.statistics.logLikelihood(
+                        start, length, this.tables);
+            }
+        } else {
+            scorer.reset(start);
+            for (int length = 1; length <= rowLength(start); length++) {
+                this.scores[offset + length - 1] = scorer.extend();
+            }
+        }
+        this.filled[start] = true;
+    }
+
+    /**
+     * @return a new scorer for filling rows of these scores, sharing their
+     * lnΓ tables
+     */
+    SegmentScorer newScorer() {
+        return new SegmentScorer(this.doc, this.tables);
+    }
+
+    /**
+     * @return the number of segments that can be stored
+     */
+    int size() {
+        return this.scores.length;
+    }
+}
@@ -0,0 +1,203 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * SegmentStatistics stores, for every segment of a document up to a maximum
+ * length, the histogram of its word counts: for each count c, the number of
+ * words (types) that appear exactly c times in the segment. Together with
+ * the number of tokens N in the segment and the vocabulary size K, this is
+ * all the DCM log-likelihood depends on, so once the statistics have been
+ * computed a segment can be rescored at any concentration parameter α with
+ * a short dot product against a table of lnΓ differences, without
+ * revisiting its words.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+class SegmentStatistics {
+
+    /**
+     * The number of start rows to compute in one fork/join task.
+     */
+    private static final int ROW_GRAIN = 16;
+
+    final DPDocument doc;
+    final int maxLength;
+
+    /**
+     * For each start row, the offset into the row's histograms of the
+     * histogram of each segment length, plus a final entry for the end of
+     * the row. Indexed by [start][length-1].
+     */
+    private final int[][] offsets;
+
+    /**
+     * For each start row, the histograms of each segment length as
+     * interleaved pairs of (count, number of words with that count).
+     */
+    private final int[][] histograms;
+
+    /**
+     * The largest number of tokens in any segment.
+     */
+    final int maxTokenCount;
+
+    /**
+     * @param doc the document whose segments are to be counted
+     * @param maxLength the maximum length of segments to be counted
+     * @param pool a pool to split the work across, or null to compute on
+     * the calling thread
+     */
+    SegmentStatistics(DPDocument doc, int maxLength, ForkJoinPool pool) {
+        checkArgument(maxLength > 0, "max length must be > 0; was %s", maxLength);
+        this.doc = doc;
+        this.maxLength = Math.min(maxLength, doc.sentenceCount);
+        this.offsets = new int[doc.sentenceCount][];
+        this.histograms = new int[doc.sentenceCount][];
+
+        this.maxTokenCount = doc.maxTokenCount(this.maxLength);
+
+        RangeTask.Action count = (from, to) -> {
+            int[] counts = new int[doc.vocabulary.size()];
+            int[] histogram = new int[this.maxTokenCount + 1];
+            for (int start = from; start < to; start++) {
+                countRow(start, counts, histogram);
+            }
+        };
+        if (pool != null) {
+            pool.invoke(new RangeTask(0, doc.sentenceCount, ROW_GRAIN, count));
+        } else {
+            count.apply(0, doc.sentenceCount);
+        }
+    }
+
+    /**
+     * Bound the number of ints the statistics of a document would take,
+     * without computing them. The counts of the distinct words of a segment
+     * of n tokens sum to n, so its histogram has at most √(2n) entries.
+     *
+     * @param doc a document
+     * @param maxLength the maximum length of segments to be counted
+     * @return an upper bound on the size of the statistics
+     */
+    static long sizeOf(DPDocument doc, int maxLength) {
+        int length = Math.min(maxLength, doc.sentenceCount);
+        long segments = 0;
+        for (int start = 0; start < doc.sentenceCount; start++) {
+            segments += Math.min(length, doc.sentenceCount - start);
+        }
+        long entries = (long) Math.sqrt(2.0 * doc.maxTokenCount(length));
+        // a (count, number of words) pair per entry, plus offsets
+        return segments * (2 * entries + 1) + doc.sentenceCount;
+    }
+
+    private void countRow(int start, int[] counts, int[] histogram) {
+        int length = rowLength(start);
+        int[] rowOffsets = new int[length + 1];
+        int[] row = new int[16];
+        int size = 0;
+        int maxCount = 0;
+        for (int end = start; end < start + length; end++) {
+            for (int i = this.doc.sentenceOffsets[end]; i < this.doc.sentenceOffsets[end+1]; i++) {
+                int c = counts[this.doc.tokens[i]]++;
+                histogram[c]--;
+                histogram[c+1]++;
+                maxCount = Math.max(maxCount, c+1);
+            }
+            for (int c = 1; c <= maxCount; c++) {
+                if (histogram[c] > 0) {
+                    if (size + 2 > row.length) {
+                        row = Arrays.copyOf(row, row.length * 2);
+                    }
+                    row[size++] = c;
+                    row[size++] = histogram[c];
+                }
+            }
+            rowOffsets[end - start + 1] = size;
+        }
+        // reset the scratch arrays for the next row
+        for (int i = this.doc.sentenceOffsets[start];
+                i < this.doc.sentenceOffsets[start + length]; i++) {
+            counts[this.doc.tokens[i]] = 0;
+        }
+        Arrays.fill(histogram, 0, maxCount + 1, 0);
+        this.offsets[start] = rowOffsets;
+        this.histograms[start] = Arrays.copyOf(row, size);
+    }
+
+    /**
+     * @return the number of ints the statistics take
+     */
+    long size() {
+        long size = 0;
+        for (int start = 0; start < this.doc.sentenceCount; start++) {
+            size += this.offsets[start].length + this.histograms[start].length;
+        }
+        return size;
+    }
+
+    /**
+     * @param start index of the first sentence of a segment
+     * @return the number of segments counted that begin at the given sentence
+     */
+    final int rowLength(int start) {
+        return Math.min(this.maxLength, this.doc.sentenceCount - start);
+    }
+
+    /**
+     * @param start index of the first sentence of the segment
+     * @param length number of sentences in the segment
+     * @return the number of tokens in the segment
+     */
+    final int tokenCount(int start, int length) {
+        return this.doc.sentenceOffsets[start + length] - this.doc.sentenceOffsets[start];
+    }
+
+    /**
+     * Compute the DCM log-likelihood of a segment.
+     *
+     * @param start index of the first sentence of the segment
+     * @param length number of sentences in the segment
+     * @param tables lnΓ differences from {@link #tables(double)}
+     * @return the log-likelihood of the segment
+     */
+    double logLikelihood(int start, int length, DCMTables tables) {
+        checkElementIndex(length - 1, rowLength(start));
+        int[] histogram = this.histograms[start];
+        double[] countTerms = tables.countTerms;
+        double sum = -tables.lengthTerms[tokenCount(start, length)];
+        for (int i = this.offsets[start][length-1]; i < this.offsets[start][length]; i += 2) {
+            sum += histogram[i+1] * countTerms[histogram[i]];
+        }
+        return sum;
+    }
+
+    /**
+     * Add a segment to a summary of segments for estimating α.
+     *
+     * @param start index of the first sentence of the segment
+     * @param length number of sentences in the segment
+     * @param builder the summary
+     */
+    void addTo(DCMObjective.Builder builder, int start, int length) {
+        checkElementIndex(length - 1, rowLength(start));
+        int[] histogram = this.histograms[start];
+        builder.addSegment(this.doc.vocabulary.size(), tokenCount(start, length));
+        for (int i = this.offsets[start][length-1]; i < this.offsets[start][length]; i += 2) {
+            builder.addCount(histogram[i], histogram[i+1]);
+        }
+    }
+
+    /**
+     * Build the lnΓ differences needed to score these segments.
+     *
+     * @param α concentration parameter
+     * @return the tables
+     */
+    DCMTables tables(double α) {
+        return new DCMTables(α, this.doc.vocabulary.size(), this.maxTokenCount);
+    }
+}
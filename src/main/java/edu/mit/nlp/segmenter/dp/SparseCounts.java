@@ -0,0 +1,67 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.Arrays;
+
+/**
+ * A vector of category counts that stores only the nonzero entries, as
+ * parallel arrays of category IDs and counts, along with the total number of
+ * categories.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public class SparseCounts {
+
+    /**
+     * The number of categories (e.g. the vocabulary size), including those
+     * with a count of 0.
+     */
+    public final int K;
+
+    /**
+     * The sum of all counts.
+     */
+    public final int N;
+
+    /**
+     * The IDs of categories with nonzero counts, in ascending order.
+     */
+    final int[] ids;
+
+    /**
+     * The nonzero counts, parallel to {@link #ids}.
+     */
+    final int[] counts;
+
+    SparseCounts(int K, int[] ids, int[] counts) {
+        checkArgument(ids.length == counts.length,
+                "ids and counts must be the same length; were %s and %s",
+                ids.length, counts.length);
+        checkArgument(ids.length <= K,
+                "more nonzero counts (%s) than categories (%s)", ids.length, K);
+        this.K = K;
+        this.ids = ids;
+        this.counts = counts;
+        this.N = Arrays.stream(counts).sum();
+    }
+
+    /**
+     * The number of categories with nonzero counts.
+     * @return the number of nonzero counts
+     */
+    public int size() {
+        return this.counts.length;
+    }
+
+    /**
+     * Expand into a dense vector of category counts.
+     * @return a vector of counts of length K
+     */
+    public int[] toArray() {
+        int[] dense = new int[this.K];
+        for (int i = 0; i < this.ids.length; i++) {
+            dense[this.ids[i]] = this.counts[i];
+        }
+        return dense;
+    }
+}
@@ -0,0 +1,416 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StreamingSegmenter segments a stream of sentences as they arrive, such as
+ * a live transcript, and reports each segment boundary once it is final. It
+ * finds the same segmentation as {@link PenalizedDP}, maximizing the total
+ * DCM log-likelihood of the segments minus a fixed penalty per segment,
+ * with the same PELT-style pruning of candidate segment starts.
+ *
+ * <p>The best segmentation of the sentences so far ending at each position
+ * is recorded by a back-pointer to the start of its last segment, and every
+ * future segmentation extends the best segmentation ending at one of the
+ * surviving candidate starts. So a boundary is final once it lies on the
+ * best segmentations ending at all of them: the boundaries up to their
+ * latest common boundary are reported. If that would leave more than a
+ * maximum lag of sentences undecided, the best segmentation so far is
+ * committed up to that lag, and candidates inconsistent with it are
+ * dropped; this bounds the delay at the cost of exactness.</p>
+ *
+ * <p>Only the sentences since the last reported boundary are kept, which
+ * is fewer than the maximum lag plus the maximum segment length, so memory
+ * does not grow with the length of the stream. Words are given IDs only
+ * while they appear in kept sentences, and the vocabulary size K of the
+ * DCM is fixed in advance rather than taken from the words seen.</p>
+ *
+ * <p>Not safe for use by multiple threads.</p>
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public class StreamingSegmenter {
+
+    private final double α;
+    private final int K;
+    private final double penalty;
+    private final int maxLength;
+    private final int maxLag;
+    private final double margin;
+    private DCMTables tables;
+
+    /**
+     * The number of sentences seen so far.
+     */
+    private int sentenceCount = 0;
+
+    /**
+     * The position of the last reported boundary, which every segmentation
+     * still under consideration passes through. Positions count sentences
+     * from the beginning of the stream.
+     */
+    private int root = 0;
+
+    /**
+     * The position up to which all boundaries are final.
+     */
+    private int decided = 0;
+
+    /**
+     * The best score of a segmentation ending at each position from the
+     * root to the last sentence, and the start of its last segment, indexed
+     * by position minus the root.
+     */
+    private double[] bestScores = new double[16];
+    private int[] bestStarts = new int[16];
+
+    /**
+     * The word IDs of each sentence from the root to the last sentence,
+     * indexed by position minus the root.
+     */
+    private int[][] sentences = new int[16][];
+
+    /**
+     * Word IDs of the words in the kept sentences, the word for each ID, the
+     * number of tokens of each ID in the kept sentences, and the IDs that
+     * are free for reuse.
+     */
+    private final Map<String,Integer> wordIDs = new HashMap<>();
+    private String[] words = new String[64];
+    private int[] references = new int[64];
+    private int[] freeIDs = new int[64];
+    private int freeIDCount = 0;
+    private int idCount = 0;
+
+    /**
+     * Surviving candidate starts, their running sums of lnΓ terms, their
+     * token counts, and their word counts indexed by word ID.
+     */
+    private final int[] candidates;
+    private final double[] sums;
+    private final int[] tokenCounts;
+    private final int[][] wordCounts;
+    private int candidateCount = 0;
+
+    /**
+     * The score of the best segmentation ending at the last sentence whose
+     * last segment begins at each candidate start, before the penalty.
+     */
+    private final double[] scores;
+
+    private boolean finished = false;
+
+    /**
+     * @param α concentration parameter
+     * @param K the vocabulary size of the stream
+     * @param penalty the penalty per segment, in units of log-likelihood
+     * @param maxLength the maximum segment length in sentences
+     * @param maxLag the maximum number of sentences that may be undecided
+     * @param margin the slack allowed before pruning a candidate start
+     */
+    public StreamingSegmenter(double α, int K, double penalty, int maxLength,
+            int maxLag, double margin) {
+        checkArgument(α > 0, "α must be > 0; was %s", α);
+        checkArgument(K > 0, "vocabulary size must be > 0; was %s", K);
+        checkArgument(maxLength > 0, "max length must be > 0; was %s", maxLength);
+        checkArgument(maxLag > 0, "max lag must be > 0; was %s", maxLag);
+        checkArgument(margin >= 0, "pruning margin must be >= 0; was %s", margin);
+        this.α = α;
+        this.K = K;
+        this.penalty = penalty;
+        this.maxLength = maxLength;
+        this.maxLag = maxLag;
+        this.margin = margin;
+        this.tables = new DCMTables(α, K, 64);
+        this.candidates = new int[maxLength];
+        this.sums = new double[maxLength];
+        this.tokenCounts = new int[maxLength];
+        this.wordCounts = new int[maxLength][];
+        this.scores = new double[maxLength];
+        for (int c = 0; c < maxLength; c++) {
+            this.wordCounts[c] = new int[64];
+        }
+        this.bestScores[0] = 0;
+        this.bestStarts[0] = -1;
+    }
+
+    /**
+     * Add the next sentence of the stream.
+     *
+     * @param sentence the tokens of the sentence
+     * @return the positions of the boundaries that became final, in order,
+     * where the position of a boundary is the number of sentences before it
+     */
+    public List<Integer> add(List<String> sentence) {
+        checkState(!this.finished, "the stream has already finished");
+        int[] ids = idsOf(sentence);
+        final int t = this.sentenceCount + 1;
+        ensureWindowCapacity(t - this.root + 1);
+        this.sentences[t-1 - this.root] = ids;
+
+        // the new sentence is a candidate start of the next segment
+        int newest = this.candidateCount++;
+        this.candidates[newest] = t-1;
+        this.sums[newest] = 0;
+        this.tokenCounts[newest] = 0;
+
+        final double[] scores = this.scores;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int bestStart = -1;
+        for (int c = 0; c < this.candidateCount; c++) {
+            int[] counts = this.wordCounts[c];
+            double sum = this.sums[c];
+            this.tokenCounts[c] += ids.length;
+            if (this.tokenCounts[c] > this.tables.maxN()) {
+                this.tables = new DCMTables(this.α, this.K, 2 * this.tokenCounts[c]);
+            }
+            double[] countTerms = this.tables.countTerms;
+            for (int id : ids) {
+                sum += countTerms[counts[id] + 1] - countTerms[counts[id]];
+                counts[id]++;
+            }
+            this.sums[c] = sum;
+            double segLL = -this.tables.lengthTerms[this.tokenCounts[c]] + sum;
+            scores[c] = bestScoreAt(this.candidates[c]) + segLL;
+            if (scores[c] - this.penalty > bestScore) {
+                bestScore = scores[c] - this.penalty;
+                bestStart = this.candidates[c];
+            }
+        }
+        this.sentenceCount = t;
+        this.bestScores[t - this.root] = bestScore;
+        this.bestStarts[t - this.root] = bestStart;
+
+        // prune candidates that can no longer start the last segment
+        int kept = 0;
+        for (int c = 0; c < this.candidateCount; c++) {
+            if (scores[c] + this.margin >= bestScore && t - this.candidates[c] < this.maxLength) {
+                keep(c, kept++);
+            } else {
+                clear(c);
+            }
+        }
+        this.candidateCount = kept;
+
+        ImmutableList.Builder<Integer> boundaries = new ImmutableList.Builder<>();
+        int common = commonBoundary();
+        if (common > this.root) {
+            this.decided = Math.max(this.decided, common);
+            commit(common, boundaries);
+        }
+        if (t - this.decided > this.maxLag) {
+            force(t - this.maxLag, boundaries);
+        }
+        return boundaries.build();
+    }
+
+    /**
+     * End the stream, reporting the remaining boundaries of the best
+     * segmentation, including the end of the stream.
+     *
+     * @return the positions of the remaining boundaries, in order
+     */
+    public List<Integer> finish() {
+        checkState(!this.finished, "the stream has already finished");
+        ImmutableList.Builder<Integer> boundaries = new ImmutableList.Builder<>();
+        commit(this.sentenceCount, boundaries);
+        this.decided = this.sentenceCount;
+        this.finished = true;
+        return boundaries.build();
+    }
+
+    /**
+     * @return the number of sentences at the end of the stream whose
+     * boundaries are not yet final, which is never more than the maximum lag
+     */
+    public int pending() {
+        return this.sentenceCount - this.decided;
+    }
+
+    /**
+     * @return the number of sentences currently kept
+     */
+    int windowSize() {
+        return this.sentenceCount - this.root;
+    }
+
+    /**
+     * Find the latest position that lies on the best segmentations ending at
+     * every surviving candidate start and at the last sentence.
+     */
+    private int commonBoundary() {
+        int[] heads = Arrays.copyOf(this.candidates, this.candidateCount + 1);
+        heads[this.candidateCount] = this.sentenceCount;
+        while (true) {
+            int max = Integer.MIN_VALUE;
+            int min = Integer.MAX_VALUE;
+            for (int head : heads) {
+                max = Math.max(max, head);
+                min = Math.min(min, head);
+            }
+            if (max == min) {
+                return max;
+            }
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] == max) {
+                    heads[i] = bestStartAt(max);
+                }
+            }
+        }
+    }
+
+    /**
+     * Commit the best segmentation so far up to the given cutoff: report its
+     * boundaries up to the cutoff, and drop any candidate start whose best
+     * segmentation disagrees with it.
+     */
+    private void force(int cutoff, ImmutableList.Builder<Integer> boundaries) {
+        int boundary = this.sentenceCount;
+        while (boundary > cutoff) {
+            boundary = bestStartAt(boundary);
+        }
+        int kept = 0;
+        for (int c = 0; c < this.candidateCount; c++) {
+            int s = this.candidates[c];
+            int ancestor = s;
+            while (ancestor > cutoff) {
+                ancestor = bestStartAt(ancestor);
+            }
+            if (ancestor == boundary) {
+                keep(c, kept++);
+            } else {
+                clear(c);
+            }
+        }
+        this.candidateCount = kept;
+        this.decided = cutoff;
+        commit(boundary, boundaries);
+    }
+
+    /**
+     * Report the boundaries of the best segmentation ending at the given
+     * position that come after the root, make the position the new root,
+     * and forget the sentences before it.
+     */
+    private void commit(int position, ImmutableList.Builder<Integer> boundaries) {
+        if (position <= this.root) {
+            return;
+        }
+        int count = 0;
+        for (int p = position; p > this.root; p = bestStartAt(p)) {
+            count++;
+        }
+        int[] committed = new int[count];
+        for (int p = position; p > this.root; p = bestStartAt(p)) {
+            committed[--count] = p;
+        }
+        for (int p : committed) {
+            boundaries.add(p);
+        }
+
+        int shift = position - this.root;
+        for (int i = 0; i < shift && i < this.sentenceCount - this.root; i++) {
+            release(this.sentences[i]);
+        }
+        int remaining = this.sentenceCount - position;
+        System.arraycopy(this.bestScores, shift, this.bestScores, 0, remaining + 1);
+        System.arraycopy(this.bestStarts, shift, this.bestStarts, 0, remaining + 1);
+        System.arraycopy(this.sentences, shift, this.sentences, 0, remaining);
+        Arrays.fill(this.sentences, remaining, remaining + shift, null);
+        this.root = position;
+    }
+
+    private double bestScoreAt(int position) {
+        return this.bestScores[position - this.root];
+    }
+
+    private int bestStartAt(int position) {
+        return this.bestStarts[position - this.root];
+    }
+
+    /**
+     * Move the candidate in one slot to another, swapping their count
+     * vectors so that none are lost.
+     */
+    private void keep(int from, int to) {
+        if (from != to) {
+            this.candidates[to] = this.candidates[from];
+            this.sums[to] = this.sums[from];
+            this.tokenCounts[to] = this.tokenCounts[from];
+            int[] counts = this.wordCounts[to];
+            this.wordCounts[to] = this.wordCounts[from];
+            this.wordCounts[from] = counts;
+        }
+    }
+
+    /**
+     * Zero the word counts of a dropped candidate, by going over the
+     * sentences from its start.
+     */
+    private void clear(int c) {
+        int[] counts = this.wordCounts[c];
+        for (int p = this.candidates[c]; p < this.sentenceCount; p++) {
+            for (int id : this.sentences[p - this.root]) {
+                counts[id] = 0;
+            }
+        }
+    }
+
+    private void ensureWindowCapacity(int size) {
+        if (size >= this.bestScores.length) {
+            int capacity = Math.max(2 * this.bestScores.length, size + 1);
+            this.bestScores = Arrays.copyOf(this.bestScores, capacity);
+            this.bestStarts = Arrays.copyOf(this.bestStarts, capacity);
+            this.sentences = Arrays.copyOf(this.sentences, capacity);
+        }
+    }
+
+    /**
+     * Look up or assign the IDs of the words in a sentence, counting a
+     * reference to each.
+     */
+    private int[] idsOf(List<String> sentence) {
+        int[] ids = new int[sentence.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String word = sentence.get(i);
+            Integer id = this.wordIDs.get(word);
+            if (id == null) {
+                id = this.freeIDCount > 0 ? this.freeIDs[--this.freeIDCount] : this.idCount++;
+                if (id >= this.words.length) {
+                    int capacity = 2 * this.words.length;
+                    this.words = Arrays.copyOf(this.words, capacity);
+                    this.references = Arrays.copyOf(this.references, capacity);
+                    this.freeIDs = Arrays.copyOf(this.freeIDs, capacity);
+                    for (int c = 0; c < this.wordCounts.length; c++) {
+                        this.wordCounts[c] = Arrays.copyOf(this.wordCounts[c], capacity);
+                    }
+                }
+                this.wordIDs.put(word, id);
+                this.words[id] = word;
+            }
+            this.references[id]++;
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Drop the references of a forgotten sentence to its words, freeing the
+     * IDs of words that no longer appear in any kept sentence.
+     */
+    private void release(int[] ids) {
+        for (int id : ids) {
+            if (--this.references[id] == 0) {
+                this.wordIDs.remove(this.words[id]);
+                this.words[id] = null;
+                this.freeIDs[this.freeIDCount++] = id;
+            }
+        }
+    }
+}
@@ -1,9 +1,22 @@
 package in.aesh.segment;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 import edu.mit.nlp.segmenter.dp.DPSeg;
+import edu.mit.nlp.segmenter.dp.ScoredSegmentation;
+import java.math.BigDecimal;
+import java.util.Arrays;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
@@ -12,37 +25,288 @@ public class BayesSegmenter extends Segmenter {
 
     private OptionSpec<Double> CONCENTRATION;
     private OptionSpec<Void> ESTIMATE_CONCENTRATION;
+    private OptionSpec<Integer> MAX_SEGMENT_LENGTH;
+    private OptionSpec<Double> MAX_SEGMENT_LENGTH_FACTOR;
+    private OptionSpec<Integer> PARALLEL_THRESHOLD;
+    private OptionSpec<Integer> SWEEP_SEGMENTS;
+    private OptionSpec<Double> SEGMENT_PENALTY;
+    private OptionSpec<Double> PRUNING_MARGIN;
+    private OptionSpec<String> CONCENTRATION_GRID;
+    private OptionSpec<Void> PER_TEXT_CONCENTRATION;
+    private OptionSpec<String> GROUP_PATTERN;
+    private OptionSpec<Integer> BEST_SEGMENTATIONS;
+    private OptionSpec<Void> BOUNDARY_PROBABILITIES;
+    private OptionSpec<Integer> SUBSEGMENTS;
             
     private double α;
     private boolean estimate;
+    private int maxSegmentLength;
+    private double maxSegmentLengthFactor;
+    private int parallelThreshold;
+    private int sweepSegments;
+    private Double penalty;
+    private double pruningMargin;
+    private List<Double> grid;
+    private boolean perText;
+    private Pattern groupPattern;
+    private int bestSegmentations;
+    private boolean boundaryProbabilities;
+    private List<Integer> subsegments;
 
     @Override
     public Segmentations segmentTexts(
             Map<String,List<List<String>>> texts,
             Map<String,Integer> segmentCounts,
             String preprocessingDescription) {
-        DPSeg dpseg = new DPSeg(texts, segmentCounts);
+        return segmentTexts(newDPSeg(texts, segmentCounts), preprocessingDescription);
+    }
+
+    @Override
+    public Segmentations segmentTexts(
+            PreparedTexts texts,
+            Map<String,Integer> segmentCounts,
+            String preprocessingDescription) {
+        DPSeg dpseg = segmentCounts.isEmpty()
+                ? new DPSeg(texts.getTexts(), texts.getVocabulary())
+                : new DPSeg(texts.getTexts(), texts.getVocabulary(), segmentCounts);
+        return segmentTexts(configure(dpseg), preprocessingDescription);
+    }
+
+    private Segmentations segmentTexts(DPSeg dpseg, String preprocessingDescription) {
+        if (!this.grid.isEmpty()) {
+            return segmentGrid(dpseg, MessageFormat.format("{0}{1}",
+                    this.getName(), preprocessingDescription));
+        }
+        if (this.estimate && (this.perText || this.groupPattern != null)) {
+            return segmentGroups(dpseg, MessageFormat.format("{0}{1}",
+                    this.getName(), preprocessingDescription));
+        }
         double final_α;
         if (this.estimate) {
             final_α = dpseg.estimateConcentrationParameter(this.α);
         } else {
-            dpseg.segment(this.α);
             final_α = this.α;
         }
         String coder = MessageFormat.format("{0}{1}-α{2}",
                 this.getName(), preprocessingDescription, final_α);
+        if (this.sweepSegments > 0) {
+            return sweep(dpseg, coder, final_α);
+        }
+        if (this.bestSegmentations > 1) {
+            return segmentBest(dpseg, coder, final_α);
+        }
+        if (this.boundaryProbabilities) {
+            return segmentWithBoundaryProbabilities(dpseg, coder, final_α);
+        }
+        if (!this.subsegments.isEmpty()) {
+            return segmentHierarchy(dpseg, coder, final_α);
+        }
+        if (this.penalty != null) {
+            dpseg.segmentPenalized(final_α, this.penalty);
+            coder = coder + "-β" + this.penalty;
+        } else if (!this.estimate) {
+            dpseg.segment(final_α);
+        }
+        return new Segmentations.Builder()
+                .add(coder, dpseg.getSegmentations())
+                .build(coder);
+    }
+
+    /**
+     * Segment at every concentration parameter in the grid, adding a coder
+     * for each one.
+     */
+    private Segmentations segmentGrid(DPSeg dpseg, String prefix) {
+        Map<Double,Map<String,Segmentation>> segmentations = dpseg.segment(this.grid);
+        Segmentations.Builder builder = new Segmentations.Builder();
+        segmentations.forEach((α, segmentationsAtα) -> builder.add(
+                gridCoder(prefix, α), segmentationsAtα));
+        return builder.build(prefix);
+    }
+
+    /**
+     * Name the coder for one concentration parameter of a grid. The parameter
+     * is written in full, rather than with MessageFormat, which rounds it to
+     * three decimal places and so would give nearby parameters the same name.
+     */
+    static String gridCoder(String prefix, double α) {
+        return prefix + "-α" + α;
+    }
+
+    /**
+     * Segment the texts, recording the probability of a boundary after each
+     * sentence as metadata of the coder, as a comma-separated list.
+     */
+    private Segmentations segmentWithBoundaryProbabilities(
+            DPSeg dpseg, String coder, double α) {
+        Map<String,double[]> probabilities = dpseg.boundaryProbabilities(α);
         return new Segmentations.Builder()
                 .add(coder, dpseg.getSegmentations())
+                .addMetadata(coder, "boundary-probabilities", 
+                        Maps.transformValues(
+                                Maps.filterValues(probabilities, ps -> ps != null),
+                                ps -> Arrays.stream(ps)
+                                        .mapToObj(p -> String.format(Locale.ROOT, "%.4f", p))
+                                        .collect(Collectors.joining(","))))
                 .build(coder);
     }
+
+    /**
+     * Find the best few segmentations of each text. The best is added under
+     * the given coder, and the rest under coders numbered by their rank.
+     * The log-likelihood of each segmentation is recorded as metadata of its
+     * coder.
+     */
+    private Segmentations segmentBest(DPSeg dpseg, String coder, double α) {
+        Map<String,List<ScoredSegmentation>> best = 
+                dpseg.segmentBest(α, this.bestSegmentations);
+        Segmentations.Builder builder = new Segmentations.Builder();
+        for (int rank = 0; rank < this.bestSegmentations; rank++) {
+            final int r = rank;
+            Map<String,ScoredSegmentation> ranked = best.entrySet().stream()
+                    .filter(e -> e.getValue().size() > r)
+                    .map(e -> Maps.immutableEntry(e.getKey(), e.getValue().get(r)))
+                    .collect(Utils.toImmutableMap());
+            String rankedCoder = rank == 0 
+                    ? coder : MessageFormat.format("{0}-rank{1}", coder, rank + 1);
+            builder.add(rankedCoder, Maps.transformValues(ranked, s -> s.segmentation))
+                    .addMetadata(rankedCoder, "log-likelihood", 
+                            Maps.transformValues(ranked, s -> s.score));
+        }
+        return builder.build(coder);
+    }
+
+    /**
+     * Segment the texts hierarchically. The top level is added under the
+     * given coder, and each lower level under a coder numbered by its 
+     * depth, with the coder of the level above it recorded as metadata.
+     */
+    private Segmentations segmentHierarchy(DPSeg dpseg, String coder, double α) {
+        Map<String,List<Segmentation>> hierarchies = 
+                dpseg.segmentHierarchy(α, this.subsegments);
+        Segmentations.Builder builder = new Segmentations.Builder();
+        String parent = null;
+        for (int level = 0; level <= this.subsegments.size(); level++) {
+            final int l = level;
+            String levelCoder = level == 0 
+                    ? coder : MessageFormat.format("{0}-level{1}", coder, level + 1);
+            builder.add(levelCoder, Maps.transformValues(hierarchies, levels -> levels.get(l)));
+            if (parent != null) {
+                final String p = parent;
+                builder.addMetadata(levelCoder, "parent", 
+                        Maps.transformValues(hierarchies, levels -> p));
+            }
+            parent = levelCoder;
+        }
+        return builder.build(coder);
+    }
+
+    /**
+     * Estimate a concentration parameter for each text or group of texts, 
+     * and record each text's estimate as metadata of the coder.
+     */
+    private Segmentations segmentGroups(DPSeg dpseg, String prefix) {
+        Map<String,Double> αs = this.groupPattern == null
+                ? dpseg.estimateConcentrationParameters(this.α)
+                : dpseg.estimateConcentrationParameters(this.α, 
+                        groupsOf(dpseg.getTextIDs(), this.groupPattern));
+        String coder = MessageFormat.format("{0}-α-{1}", 
+                prefix, this.groupPattern == null ? "per-text" : "per-group");
+        return new Segmentations.Builder()
+                .add(coder, dpseg.getSegmentations())
+                .addMetadata(coder, "concentration", αs)
+                .build(coder);
+    }
+
+    /**
+     * Assign texts to groups by matching a pattern against their IDs. The
+     * group of a text is the part of its ID matched by the first capturing
+     * group of the pattern, or by the whole pattern if it has no capturing
+     * groups. Texts whose IDs don't match are each in a group of their own.
+     */
+    static Map<String,String> groupsOf(Set<String> textIDs, Pattern pattern) {
+        return textIDs.stream()
+                .map(textID -> {
+                    Matcher matcher = pattern.matcher(textID);
+                    String group = textID;
+                    if (matcher.find()) {
+                        group = matcher.group(matcher.groupCount() > 0 ? 1 : 0);
+                    }
+                    return Maps.immutableEntry(textID, group);
+                })
+                .collect(Utils.toImmutableMap());
+    }
+
+    /**
+     * Parse a list of concentration parameters, each of which is either a
+     * single value or an inclusive range of evenly spaced values given as
+     * from:to:step.
+     */
+    static List<Double> parseGrid(List<String> values) {
+        ImmutableList.Builder<Double> grid = new ImmutableList.Builder<>();
+        for (String value : values) {
+            List<String> parts = Splitter.on(':').trimResults().splitToList(value);
+            if (parts.size() == 1) {
+                grid.add(Double.valueOf(parts.get(0)));
+            } else if (parts.size() == 3) {
+                BigDecimal from = new BigDecimal(parts.get(0));
+                BigDecimal to = new BigDecimal(parts.get(1));
+                BigDecimal step = new BigDecimal(parts.get(2));
+                checkArgument(step.signum() > 0, "step must be > 0 in %s", value);
+                for (BigDecimal α = from; α.compareTo(to) <= 0; α = α.add(step)) {
+                    grid.add(α.doubleValue());
+                }
+            } else {
+                throw new IllegalArgumentException(
+                        "expected a value or from:to:step; was " + value);
+            }
+        }
+        return grid.build();
+    }
+
+    /**
+     * Segment into every number of segments up to the sweep maximum, adding
+     * a coder for each number of segments.
+     */
+    private Segmentations sweep(DPSeg dpseg, String coder, double α) {
+        Map<String,SortedMap<Integer,Segmentation>> segmentations =
+                dpseg.segmentAll(α, this.sweepSegments);
+        Segmentations.Builder builder = new Segmentations.Builder();
+        for (int k = 1; k <= this.sweepSegments; k++) {
+            final int numSegments = k;
+            builder.add(MessageFormat.format("{0}-k{1}", coder, numSegments),
+                    segmentations.entrySet().stream()
+                            .filter(e -> e.getValue().containsKey(numSegments))
+                            .map(e -> Maps.immutableEntry(
+                                    e.getKey(), e.getValue().get(numSegments)))
+                            .collect(Utils.toImmutableMap()));
+        }
+        return builder.build(coder);
+    }
     
     public double estimateConcentrationParameter(
             Map<String,List<List<String>>> texts,
             Map<String,Integer> segmentCounts) {
-        DPSeg dpseg = new DPSeg(texts, segmentCounts);
+        DPSeg dpseg = newDPSeg(texts, segmentCounts);
         return dpseg.estimateConcentrationParameter(this.α);
     }
 
+    private DPSeg newDPSeg(
+            Map<String,List<List<String>>> texts,
+            Map<String,Integer> segmentCounts) {
+        return configure(segmentCounts.isEmpty()
+                ? new DPSeg(texts)
+                : new DPSeg(texts, segmentCounts));
+    }
+
+    private DPSeg configure(DPSeg dpseg) {
+        return dpseg
+                .setMaxSegmentLength(this.maxSegmentLength)
+                .setMaxSegmentLengthFactor(this.maxSegmentLengthFactor)
+                .setParallelThreshold(this.parallelThreshold)
+                .setPruningMargin(this.pruningMargin);
+    }
+
     @Override
     public String getName() {
         return "bayes";
@@ -53,12 +317,98 @@ public class BayesSegmenter extends Segmenter {
         CONCENTRATION = parser.accepts("concentration")
                 .withRequiredArg().ofType(Double.class).required();
         ESTIMATE_CONCENTRATION = parser.accepts("estimate-concentration");
+        MAX_SEGMENT_LENGTH = parser.accepts("max-segment-length",
+                "maximum segment length in sentences")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        CONCENTRATION_GRID = parser.accepts("grid",
+                "segment at each of these comma-separated concentration parameters, "
+                + "or ranges of them given as from:to:step")
+                .withRequiredArg().ofType(String.class).withValuesSeparatedBy(',');
+        SEGMENT_PENALTY = parser.accepts("segment-penalty",
+                "choose the number of segments, penalizing the log-likelihood this much per segment")
+                .withRequiredArg().ofType(Double.class);
+        PRUNING_MARGIN = parser.accepts("pruning-margin",
+                "slack before pruning candidate segments when choosing the number of segments")
+                .withRequiredArg().ofType(Double.class).defaultsTo(20.0);
+        MAX_SEGMENT_LENGTH_FACTOR = parser.accepts("max-segment-length-factor",
+                "maximum segment length as a multiple of the mean segment length")
+                .withRequiredArg().ofType(Double.class).defaultsTo(0.0);
+        PARALLEL_THRESHOLD = parser.accepts("parallel-threshold",
+                "minimum number of sentences for a text to be segmented on multiple threads")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(2000);
+        PER_TEXT_CONCENTRATION = parser.accepts("per-text-concentration",
+                "with -estimate-concentration, estimate a separate concentration "
+                + "parameter for each text");
+        GROUP_PATTERN = parser.accepts("group-pattern",
+                "with -estimate-concentration, estimate a separate concentration "
+                + "parameter for each group of texts, grouping them by the part "
+                + "of their IDs matching the first capturing group of this regex")
+                .withRequiredArg().ofType(String.class);
+        BEST_SEGMENTATIONS = parser.accepts("best-segmentations",
+                "find this many of the best segmentations of each text, adding "
+                + "a coder for each rank")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        BOUNDARY_PROBABILITIES = parser.accepts("boundary-probabilities",
+                "record the probability of a boundary after each sentence");
+        SUBSEGMENTS = parser.accepts("subsegments",
+                "split each segment into this many subsegments, adding a coder "
+                + "for the subsegments; give several comma-separated numbers "
+                + "to split the subsegments further")
+                .withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',');
+        SWEEP_SEGMENTS = parser.accepts("sweep-segments",
+                "segment into every number of segments up to this maximum")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(0);
     }
 
     @Override
     public void init(OptionSet options) {
         this.α = options.valueOf(CONCENTRATION);
         this.estimate = options.has(ESTIMATE_CONCENTRATION);
+        this.maxSegmentLength = options.valueOf(MAX_SEGMENT_LENGTH);
+        this.maxSegmentLengthFactor = options.valueOf(MAX_SEGMENT_LENGTH_FACTOR);
+        this.parallelThreshold = options.valueOf(PARALLEL_THRESHOLD);
+        this.sweepSegments = options.valueOf(SWEEP_SEGMENTS);
+        this.penalty = options.valueOf(SEGMENT_PENALTY);
+        this.pruningMargin = options.valueOf(PRUNING_MARGIN);
+        this.grid = parseGrid(options.valuesOf(CONCENTRATION_GRID));
+        this.perText = options.has(PER_TEXT_CONCENTRATION);
+        this.groupPattern = options.has(GROUP_PATTERN)
+                ? Pattern.compile(options.valueOf(GROUP_PATTERN)) : null;
+        this.bestSegmentations = options.valueOf(BEST_SEGMENTATIONS);
+        checkArgument(this.bestSegmentations > 0, 
+                "number of best segmentations must be > 0; was %s", 
+                this.bestSegmentations);
+        checkArgument(this.bestSegmentations == 1 
+                || (this.sweepSegments == 0 && this.penalty == null 
+                    && this.grid.isEmpty() && !this.perText && this.groupPattern == null),
+                "finding the best segmentations can only be combined with "
+                + "a single concentration parameter and fixed segment counts");
+        this.boundaryProbabilities = options.has(BOUNDARY_PROBABILITIES);
+        checkArgument(!this.boundaryProbabilities
+                || (this.sweepSegments == 0 && this.penalty == null 
+                    && this.grid.isEmpty() && !this.perText && this.groupPattern == null
+                    && this.bestSegmentations == 1),
+                "boundary probabilities can only be found with a single "
+                + "concentration parameter and fixed segment counts");
+        this.subsegments = options.valuesOf(SUBSEGMENTS);
+        checkArgument(this.subsegments.stream().allMatch(n -> n > 0),
+                "numbers of subsegments must be > 0; were %s", this.subsegments);
+        checkArgument(this.subsegments.isEmpty()
+                || (this.sweepSegments == 0 && this.penalty == null 
+                    && this.grid.isEmpty() && !this.perText && this.groupPattern == null
+                    && this.bestSegmentations == 1 && !this.boundaryProbabilities),
+                "subsegments can only be found with a single concentration "
+                + "parameter and fixed segment counts");
+        checkArgument(this.grid.isEmpty() || !this.estimate,
+                "a grid of concentration parameters cannot be combined with "
+                + "estimating the concentration parameter");
+        checkArgument(this.estimate || !(this.perText || this.groupPattern != null),
+                "per-text or per-group concentration parameters can only be "
+                + "used with -estimate-concentration");
+        checkArgument(!(this.perText || this.groupPattern != null)
+                || (this.sweepSegments == 0 && this.penalty == null),
+                "per-text or per-group concentration parameters cannot be "
+                + "combined with sweeping or penalizing segments");
     }
 
     
@@ -1,7 +1,8 @@
 package in.aesh.segment;
 
-import com.google.common.base.Splitter;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -16,6 +17,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
@@ -26,6 +29,7 @@ import joptsimple.OptionSpec;
  */
 public class Main {
 
+    private final static Logger log = Logger.getLogger(Main.class.getSimpleName());
     private static final OptionParser parser;
     private static final OptionSpec<Integer> NUM_SEGMENTS;
     private static final OptionSpec<File> REFERENCE;
@@ -33,6 +37,7 @@ public class Main {
     private static final OptionSpec<Void> STEM;
     private static final OptionSpec<File> STOPWORDS;
     private static final OptionSpec<String> DOCNAME_PREFIX;
+    private static final OptionSpec<Integer> MAX_OPEN_FILES;
     private static final OptionSpec<File> FILES;
 
     
@@ -44,6 +49,9 @@ public class Main {
         STEM = parser.accepts("stem");
         STOPWORDS = parser.accepts("stopwords").withRequiredArg().ofType(File.class);
         DOCNAME_PREFIX = parser.accepts("docname-prefix").withRequiredArg().ofType(String.class);
+        MAX_OPEN_FILES = parser.accepts("max-open-files", 
+                "maximum number of input files to read at once")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(64);
         FILES = parser.nonOptions("sentence files to be segmented").ofType(File.class);
     }
 
@@ -80,17 +88,16 @@ public class Main {
         return segmenters;
     }
 
-    private static Map<String,List<List<String>>> prepareTexts(Map<String,List<String>> texts, Stemmer stemmer, List<String> stopwords) {
-        return texts.keySet().stream().map(key -> {
-            List<String> text = texts.get(key);
-            List<List<String>> sentences = text.stream()
-                    .map(Utils::clean)
-                    .map(Splitter.on(' ')::splitToList)
-                    .map(stemmer::stemWords)
-                    .map(words -> Utils.removeStopwords(words, stopwords))
-                    .collect(Utils.toImmutableList());
-            return Maps.immutableEntry(key, sentences);
-        }).collect(Utils.toImmutableMap());
+    private static PreparedTexts prepareTexts(List<File> files, Function<File,String> file2id, 
+            int maxOpenFiles, Stemmer stemmer, List<String> stopwords) {
+        Preprocessor preprocessor = new Preprocessor(stemmer, stopwords);
+        PreparedTexts prepared = preprocessor.prepare(files, file2id, maxOpenFiles);
+        CacheStats statistics = preprocessor.getStatistics();
+        log.log(Level.INFO, "Prepared {0} tokens, {1} of them from the cache "
+                + "({2} distinct tokens cached)", new Object[]{
+                    statistics.requestCount(), statistics.hitCount(), 
+                    preprocessor.cacheSize()});
+        return prepared;
     }
 
 
@@ -129,7 +136,8 @@ public class Main {
             this.file2id = f -> f.toPath().toAbsolutePath().toString();
         }
 
-        this.stemmer = this.options.has(STEM) ? new PorterStemmer() : new NullStemmer();
+        this.stemmer = this.options.has(STEM) 
+                ? new ThreadLocalStemmer(PorterStemmer::new) : new NullStemmer();
         this.stopwords = this.options.has(STOPWORDS)
                 ? stemmer.stemWords(Utils.loadWords(this.options.valueOf(STOPWORDS)))
                 : ImmutableList.of();
@@ -141,7 +149,16 @@ public class Main {
      * @return a map of text IDs to lists of lists of tokens
      */
     public final Map<String,List<List<String>>> loadAndPrepareTexts() {
-        return prepareTexts(Utils.loadTexts(this.files, this.file2id),
+        return loadPreparedTexts().asWords();
+    }
+
+    /**
+     * Get the texts as they will be sent to the segmenters, as sentences of
+     * word IDs.
+     * @return the prepared texts
+     */
+    public final PreparedTexts loadPreparedTexts() {
+        return prepareTexts(this.files, this.file2id, this.options.valueOf(MAX_OPEN_FILES),
                 this.stemmer, this.stopwords);
     }
 
@@ -157,7 +174,7 @@ public class Main {
             segmentCounts = textIDs.stream()
                     .map(key -> Maps.immutableEntry(key, this.options.valueOf(NUM_SEGMENTS)))
                     .collect(Utils.toImmutableMap());
-        } else {
+        } else if (this.options.has(REFERENCE)) {
             Gson gson = new Gson();
             Segmentations reference = gson.fromJson(
                     new FileReader(this.options.valueOf(REFERENCE)), Segmentations.class);
@@ -166,14 +183,17 @@ public class Main {
             } else {
                 segmentCounts = reference.getMeanSegmentCounts();
             }
+        } else {
+            // the segmenters will have to choose the number of segments
+            segmentCounts = ImmutableMap.of();
         }
-        assert segmentCounts.keySet().equals(textIDs);
+        assert segmentCounts.isEmpty() || segmentCounts.keySet().equals(textIDs);
         return segmentCounts;
     }
 
     private void run() throws FileNotFoundException {
-        Map<String,List<List<String>>> texts = this.loadAndPrepareTexts();
-        Map<String, Integer> segmentCounts = this.getDesiredSegmentCounts(texts.keySet());
+        PreparedTexts texts = this.loadPreparedTexts();
+        Map<String, Integer> segmentCounts = this.getDesiredSegmentCounts(texts.getTextIDs());
 
         String preprocessingDescription = MessageFormat.format("{0}{1}",
                 this.options.has(STEM) ? "-stem" : "",
@@ -185,7 +205,7 @@ public class Main {
                     return segmenter.segmentTexts(
                             texts, segmentCounts, preprocessingDescription);
                 })
-                .reduce(Segmentations.empty(texts.keySet()), (l,r) -> l.merge(r));
+                .reduce(Segmentations.empty(texts.getTextIDs()), (l,r) -> l.merge(r));
 
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
         System.out.println(gson.toJson(segmentations));
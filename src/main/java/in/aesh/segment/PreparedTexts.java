@@ -0,0 +1,59 @@
+package in.aesh.segment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Texts that have been tokenized, stemmed and filtered, stored as arrays of
+ * sentences of word IDs. The IDs index a vocabulary shared by all the texts.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public class PreparedTexts {
+
+    private final ImmutableList<String> vocabulary;
+    private final ImmutableMap<String,int[][]> texts;
+
+    PreparedTexts(ImmutableList<String> vocabulary, ImmutableMap<String,int[][]> texts) {
+        this.vocabulary = vocabulary;
+        this.texts = texts;
+    }
+
+    /**
+     * @return the words of all the texts, indexed by word ID
+     */
+    public List<String> getVocabulary() {
+        return this.vocabulary;
+    }
+
+    /**
+     * @return a map of text IDs to arrays of sentences of word IDs
+     */
+    public Map<String,int[][]> getTexts() {
+        return this.texts;
+    }
+
+    public Set<String> getTextIDs() {
+        return this.texts.keySet();
+    }
+
+    /**
+     * @return a map of text IDs to lists of sentences of words, for 
+     * segmenters that work with words rather than word IDs
+     */
+    public Map<String,List<List<String>>> asWords() {
+        return this.texts.entrySet().stream()
+                .map(e -> Maps.immutableEntry(e.getKey(), 
+                        (List<List<String>>) Arrays.stream(e.getValue())
+                                .map(sentence -> (List<String>) Arrays.stream(sentence)
+                                        .mapToObj(this.vocabulary::get)
+                                        .collect(Utils.toImmutableList()))
+                                .collect(Utils.toImmutableList())))
+                .collect(Utils.toImmutableMap());
+    }
+}
@@ -0,0 +1,189 @@
+package in.aesh.segment;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Preprocessor turns lines of text into sentences of word IDs. Each line is
+ * {@link Utils#tokenize(String) tokenized}, and each token is mapped to the 
+ * ID of its stem in a vocabulary shared by all the texts, or dropped if its
+ * stem is a stopword. The IDs of the tokens seen most recently are cached,
+ * so a token is stemmed and checked against the stopwords only when it is
+ * missing from the cache; otherwise filtering, stemming and mapping it cost
+ * a single hash lookup.
+ *
+ * <p>A preprocessor is safe for use by multiple threads if its stemmer is,
+ * as a {@link ThreadLocalStemmer} is, and {@link #prepare(Map)} prepares 
+ * texts in parallel. Word IDs are then assigned in whatever order the 
+ * threads first see the words.</p>
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public class Preprocessor {
+
+    /**
+     * The ID of tokens whose stems are stopwords.
+     */
+    private static final int STOPWORD = -1;
+
+    /**
+     * The default maximum number of token IDs to cache.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 100000;
+
+    private final Stemmer stemmer;
+    private final ImmutableSet<String> stopwords;
+    private final LoadingCache<String,Integer> tokenIDs;
+    private final Map<String,Integer> stemIDs = new HashMap<>();
+    private final List<String> vocabulary = new ArrayList<>();
+
+    /**
+     * @param stemmer a stemmer, which must be safe for use by multiple 
+     * threads if texts are to be prepared in parallel
+     * @param stopwords stopwords, already stemmed with the stemmer
+     */
+    public Preprocessor(Stemmer stemmer, Collection<String> stopwords) {
+        this(stemmer, stopwords, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param stemmer a stemmer, which must be safe for use by multiple 
+     * threads if texts are to be prepared in parallel
+     * @param stopwords stopwords, already stemmed with the stemmer
+     * @param maximumSize the maximum number of token IDs to cache
+     */
+    public Preprocessor(Stemmer stemmer, Collection<String> stopwords, long maximumSize) {
+        checkArgument(maximumSize >= 0, "maximum size must be >= 0; was %s", maximumSize);
+        this.stemmer = stemmer;
+        this.stopwords = ImmutableSet.copyOf(stopwords);
+        this.tokenIDs = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<String,Integer>() {
+                    @Override
+                    public Integer load(String token) {
+                        return stemIDOf(token);
+                    }
+                });
+    }
+
+    /**
+     * Prepare the lines of each of a set of texts in parallel, adding their
+     * stems to the shared vocabulary.
+     *
+     * @param texts a map of text IDs to lists of lines
+     * @return the prepared texts, with the vocabulary seen so far
+     */
+    public PreparedTexts prepare(Map<String,List<String>> texts) {
+        ImmutableMap<String,int[][]> prepared = texts.entrySet().parallelStream()
+                .map(e -> Maps.immutableEntry(e.getKey(), e.getValue().stream()
+                        .map(this::prepareLine)
+                        .toArray(int[][]::new)))
+                .collect(Utils.toImmutableMap());
+        return withVocabulary(prepared);
+    }
+
+    /**
+     * Read and prepare a set of files in parallel, one text per file. The
+     * lines of each file are streamed straight into 
+     * {@link #prepareLine(String)}, so only the prepared form of each text is
+     * kept, and at most the given number of files are open at once.
+     *
+     * @param files the files to read
+     * @param file2id a function giving the text ID of each file
+     * @param maxOpenFiles the maximum number of files to have open at once
+     * @return the prepared texts, with the vocabulary seen so far
+     */
+    public PreparedTexts prepare(List<File> files, Function<File,String> file2id, 
+            int maxOpenFiles) {
+        checkArgument(maxOpenFiles > 0, 
+                "max open files must be > 0; was %s", maxOpenFiles);
+        Semaphore openFiles = new Semaphore(maxOpenFiles);
+        ImmutableMap<String,int[][]> prepared = files.parallelStream()
+                .map(file -> Maps.immutableEntry(
+                        file2id.apply(file), prepareFile(file, openFiles)))
+                .collect(Utils.toImmutableMap());
+        return withVocabulary(prepared);
+    }
+
+    private int[][] prepareFile(File file, Semaphore openFiles) {
+        openFiles.acquireUninterruptibly();
+        try (Stream<String> lines = Files.lines(file.toPath())) {
+            return lines.map(this::prepareLine).toArray(int[][]::new);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            openFiles.release();
+        }
+    }
+
+    private synchronized PreparedTexts withVocabulary(ImmutableMap<String,int[][]> texts) {
+        return new PreparedTexts(ImmutableList.copyOf(this.vocabulary), texts);
+    }
+
+    /**
+     * Prepare a line of text, adding its stems to the shared vocabulary.
+     *
+     * @param line a line of text
+     * @return the IDs of the stems of the tokens of the line that are not
+     * stopwords
+     */
+    public int[] prepareLine(String line) {
+        List<String> tokens = Utils.tokenize(line);
+        int[] ids = new int[tokens.size()];
+        int length = 0;
+        for (String token : tokens) {
+            int id = this.tokenIDs.getUnchecked(token);
+            if (id != STOPWORD) {
+                ids[length++] = id;
+            }
+        }
+        return length == ids.length ? ids : Arrays.copyOf(ids, length);
+    }
+
+    private int stemIDOf(String token) {
+        String stem = this.stemmer.stemWord(token);
+        if (this.stopwords.contains(stem)) {
+            return STOPWORD;
+        }
+        synchronized (this) {
+            return this.stemIDs.computeIfAbsent(stem, s -> {
+                this.vocabulary.add(s);
+                return this.vocabulary.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * @return statistics of the cache of token IDs, such as its hit rate
+     */
+    public CacheStats getStatistics() {
+        return this.tokenIDs.stats();
+    }
+
+    /**
+     * @return the approximate number of token IDs cached
+     */
+    public long cacheSize() {
+        return this.tokenIDs.size();
+    }
+}
@@ -43,6 +43,22 @@ public class Segmentation  {
         return this.segments.size();
     }
     
+    @Override
+    public boolean equals(Object o) {
+        if (! (o instanceof Segmentation)) {
+            return false;
+        }
+        if (o == this) {
+            return true;
+        }
+        return this.segments.equals(((Segmentation) o).segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.segments.hashCode();
+    }
+
     @Override
     public String toString() {
         return "[" + this.segments.stream()
@@ -17,6 +17,7 @@ public class Segmentations {
     @SerializedName("segmentation_type")
     private String segmentationType;
     private Map<String,Map<String,int[]>> items;
+    private Map<String,Map<String,Map<String,String>>> metadata;
     
     private Segmentations() {} // required for GSON
 
@@ -24,6 +25,9 @@ public class Segmentations {
         this.id = id;
         this.segmentationType = "linear";
         this.items = ImmutableMap.copyOf(builder.items);
+        // left null when empty, so that it is omitted from the JSON
+        this.metadata = builder.metadata.isEmpty() 
+                ? null : ImmutableMap.copyOf(builder.metadata);
     }
 
     public static Segmentations empty(Set<String> itemIDs) {
@@ -38,9 +42,11 @@ public class Segmentations {
 
     public static class Builder {
         private final Map<String,Map<String,int[]>> items;
+        private final Map<String,Map<String,Map<String,String>>> metadata;
 
         public Builder() {
             this.items = new HashMap<>();
+            this.metadata = new HashMap<>();
         }
 
         private Builder add(Map<String,Map<String,int[]>> items) {
@@ -48,6 +54,17 @@ public class Segmentations {
             return this;
         }
 
+        private Builder addMetadata(Map<String,Map<String,Map<String,String>>> metadata) {
+            if (metadata != null) {
+                metadata.forEach((itemID, coders) -> coders.forEach((coder, values) -> 
+                        values.forEach((name, value) -> this.metadata
+                                .computeIfAbsent(itemID, key -> new HashMap<>())
+                                .computeIfAbsent(coder, key -> new HashMap<>())
+                                .put(name, value))));
+            }
+            return this;
+        }
+
         public Builder add(String coder, Map<String,Segmentation> segmentations) {
             segmentations.entrySet().stream().forEach(e -> {
                 this.items.computeIfAbsent(e.getKey(), key -> new HashMap<>())
@@ -56,6 +73,23 @@ public class Segmentations {
             return this;
         }
 
+        /**
+         * Record a named value describing the segmentation of each item by
+         * a coder, such as a parameter that was estimated for that item.
+         *
+         * @param coder the coder
+         * @param name the name of the value
+         * @param values a map of item IDs to values
+         * @return this builder
+         */
+        public Builder addMetadata(String coder, String name, Map<String,?> values) {
+            values.forEach((itemID, value) -> this.metadata
+                    .computeIfAbsent(itemID, key -> new HashMap<>())
+                    .computeIfAbsent(coder, key -> new HashMap<>())
+                    .put(name, String.valueOf(value)));
+            return this;
+        }
+
         public Segmentations build(String id) {
             return new Segmentations(id, this);
         }
@@ -69,6 +103,8 @@ public class Segmentations {
         Builder builder = new Builder();
         builder.add(this.items);
         builder.add(segmentations.items);
+        builder.addMetadata(this.metadata);
+        builder.addMetadata(segmentations.metadata);
         String mergedID;
         if (this.id.length() == 0) {
             mergedID = segmentations.id;
@@ -99,6 +135,20 @@ public class Segmentations {
         return builder.build();
     }
 
+    /**
+     * @param itemID an item ID
+     * @param coder a coder
+     * @return a map of names to values describing the segmentation of the 
+     * item by the coder, which is empty if there are none
+     */
+    public Map<String,String> getMetadata(String itemID, String coder) {
+        if (this.metadata == null) {
+            return ImmutableMap.of();
+        }
+        return this.metadata.getOrDefault(itemID, ImmutableMap.of())
+                .getOrDefault(coder, ImmutableMap.of());
+    }
+
     public Map<String,Map<String,Segmentation>> getItems() {
         return this.items.entrySet().stream().map(itemEntry -> {
             String itemId = itemEntry.getKey();
@@ -71,4 +71,22 @@ public abstract class Segmenter {
             Map<String,List<List<String>>> texts,
             Map<String,Integer> desiredNumSegments,
             String preprocessingDescription);
+
+    /**
+     * Segment a set of texts given as sentences of word IDs. By default the 
+     * IDs are mapped back to words and the texts segmented with
+     * {@link #segmentTexts(Map, Map, String)}; segmenters that can work with
+     * word IDs directly should override this.
+     *
+     * @param texts prepared texts
+     * @param desiredNumSegments a map of text IDs to desired segment counts
+     * @param preprocessingDescription textual description of how texts have been preprocessed
+     * @return a set of segmentations
+     */
+    public Segmentations segmentTexts(
+            PreparedTexts texts,
+            Map<String,Integer> desiredNumSegments,
+            String preprocessingDescription) {
+        return segmentTexts(texts.asWords(), desiredNumSegments, preprocessingDescription);
+    }
 }
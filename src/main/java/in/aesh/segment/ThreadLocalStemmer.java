@@ -0,0 +1,38 @@
+package in.aesh.segment;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A stemmer that is safe for use by multiple threads. Each word is stemmed
+ * by a stemmer belonging to the calling thread, so that stemmers that keep
+ * their working state in instance fields, such as {@link PorterStemmer}, are
+ * never shared. Stems are not remembered; {@link Preprocessor} already 
+ * stems each token only once.
+ *
+ * @author Ryan Shaw <ryanshaw@unc.edu>
+ */
+public class ThreadLocalStemmer implements Stemmer {
+
+    private final ThreadLocal<Stemmer> stemmers;
+
+    /**
+     * @param stemmers a supplier of new stemmers, one for each thread
+     */
+    public ThreadLocalStemmer(Supplier<Stemmer> stemmers) {
+        this.stemmers = ThreadLocal.withInitial(stemmers);
+    }
+
+    @Override
+    public String stemWord(String word) {
+        return this.stemmers.get().stemWord(word);
+    }
+
+    @Override
+    public ImmutableList<String> stemWords(List<String> words) {
+        return words.stream()
+                .map(this::stemWord)
+                .collect(Utils.toImmutableList());
+    }
+}
@@ -9,6 +9,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collector;
@@ -65,9 +66,11 @@ public interface Utils {
 
     public static Map.Entry<String,List<String>> loadText(File file, 
             Function<File,String> file2id) throws IOException {
-        return Maps.immutableEntry(
-                file2id.apply(file), 
-                Files.lines(file.toPath()).collect(Collectors.toList()));
+        try (Stream<String> lines = Files.lines(file.toPath())) {
+            return Maps.immutableEntry(
+                    file2id.apply(file), 
+                    lines.collect(Collectors.toList()));
+        }
     }
 
     public static ImmutableMap<String,List<String>> loadTexts(List<File> files) {
@@ -106,9 +109,65 @@ public interface Utils {
         return collapsed.replaceAll("([a-z])('[a-z])", "$1 $2");
     }
 
+    /**
+     * Split a line into tokens in a single pass. The tokens are exactly those
+     * of {@code Splitter.on(' ').splitToList(clean(s))}, including the single 
+     * empty token of a line with nothing left after cleaning, but no 
+     * intermediate strings are created unless the line has non-ASCII 
+     * characters or the default locale lowercases ASCII differently.
+     *
+     * @param s a line of text
+     * @return a list of tokens
+     */
+    public static ImmutableList<String> tokenize(String s) {
+        // Lowercasing A-Z one character at a time matches toLowerCase() for
+        // ASCII text, except in locales with a dotless i.
+        String language = Locale.getDefault().getLanguage();
+        boolean ascii = !(language.equals("tr") || language.equals("az"))
+                && CharMatcher.ASCII.matchesAllOf(s);
+        String lowercased = ascii ? s : s.toLowerCase();
+        ImmutableList.Builder<String> tokens = new ImmutableList.Builder<>();
+        char[] token = new char[lowercased.length()];
+        int length = 0;
+        boolean empty = true;
+        for (int i = 0; i <= lowercased.length(); i++) {
+            char c = i < lowercased.length() ? lowercased.charAt(i) : ' ';
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (CharMatcher.JAVA_LOWER_CASE.matches(c) || c == '$' || c == '\'') {
+                token[length++] = c;
+            } else if (CharMatcher.WHITESPACE.matches(c) && length > 0) {
+                // Split before each apostrophe between two ASCII letters,
+                // resuming after the second letter as replaceAll() does.
+                int start = 0;
+                int j = 0;
+                while (j + 2 < length) {
+                    if (token[j] >= 'a' && token[j] <= 'z' && token[j + 1] == '\'' 
+                            && token[j + 2] >= 'a' && token[j + 2] <= 'z') {
+                        tokens.add(new String(token, start, j + 1 - start));
+                        start = j + 1;
+                        j += 3;
+                    } else {
+                        j++;
+                    }
+                }
+                tokens.add(new String(token, start, length - start));
+                empty = false;
+                length = 0;
+            }
+        }
+        if (empty) {
+            tokens.add("");
+        }
+        return tokens.build();
+    }
+
     public static ImmutableList<String> loadWords(File file) throws IOException {
-        return Files.lines(file.toPath())
-                .map((String line) -> line.trim().toLowerCase())
-                .collect(Utils.toImmutableList());
+        try (Stream<String> lines = Files.lines(file.toPath())) {
+            return lines
+                    .map((String line) -> line.trim().toLowerCase())
+                    .collect(Utils.toImmutableList());
+        }
     }
 }
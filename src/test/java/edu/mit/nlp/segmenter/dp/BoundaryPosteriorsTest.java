@@ -0,0 +1,69 @@
+package edu.mit.nlp.segmenter.dp;
+
+import in.aesh.segment.Segmentation;
+import java.util.Arrays;
+import java.util.List;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class BoundaryPosteriorsTest {
+
+    private static final List<List<String>> SENTENCES = Arrays.asList(
+            /*0*/Arrays.asList("gimme", "ax", "lived", "house"),
+            /*1*/Arrays.asList("chimney", "sits", "house", "smoke", "gimme", "ax"),
+            /*2*/Arrays.asList("doorknobs", "open", "doors"),
+            /*3*/Arrays.asList("windows", "open", "shut"),
+            /*4*/Arrays.asList("upstairs", "downstairs", "house"),
+            /*5*/Arrays.asList(),
+            /*6*/Arrays.asList("decided", "let", "children"));
+
+    @Test
+    public void testMatchesExhaustiveSum() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        for (int maxLength : new int[]{ 3, 7 }) {
+            SegmentScores segLLs = new SegmentScores(doc, maxLength, 0.2);
+            // sum the likelihoods of every segmentation into 3 segments
+            double Z = 0;
+            double[] boundaries = new double[7];
+            for (int a = 1; a < 7; a++) {
+                for (int b = 1; a + b < 7; b++) {
+                    if (a > maxLength || b > maxLength || 7-a-b > maxLength) {
+                        continue;
+                    }
+                    double likelihood = Math.exp(new Segmentation(new int[]{ a, b, 7-a-b })
+                            .stream().mapToDouble(s -> segLLs.get(s.start, s.length)).sum());
+                    Z += likelihood;
+                    boundaries[a-1] += likelihood;
+                    boundaries[a+b-1] += likelihood;
+                }
+            }
+            BoundaryPosteriors posteriors = new BoundaryPosteriors(segLLs, 3, null);
+            assertThat(posteriors.logPartition(), closeTo(Math.log(Z), 1e-9));
+            double[] probabilities = posteriors.probabilities();
+            for (int t = 0; t < 6; t++) {
+                assertThat(probabilities[t], closeTo(boundaries[t] / Z, 1e-9));
+            }
+            assertThat(probabilities[6], equalTo(1.0));
+        }
+    }
+
+    @Test
+    public void testNoSegmentations() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        BoundaryPosteriors posteriors = new BoundaryPosteriors(
+                new SegmentScores(doc, 2, 0.2), 3, null);
+        assertThat(posteriors.probabilities(), nullValue());
+    }
+
+    @Test
+    public void testLogSumExp() {
+        double[] xs = new double[]{ -1000, -1001, -1002, 5 };
+        assertThat(BoundaryPosteriors.logSumExp(xs, 3), closeTo(
+                -1000 + Math.log(1 + Math.exp(-1) + Math.exp(-2)), 1e-9));
+        assertThat(BoundaryPosteriors.logSumExp(xs, 0), 
+                equalTo(Double.NEGATIVE_INFINITY));
+    }
+}
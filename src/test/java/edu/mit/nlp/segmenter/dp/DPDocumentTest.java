@@ -33,10 +33,26 @@ public class DPDocumentTest {
         assertThat(doc.vocabulary, contains("gimme", "ax", "lived", "house", "chimney", 
                 "sits", "smoke", "doorknobs", "open", "doors", "windows", "shut", 
                 "upstairs", "downstairs", "decided", "let", "children"));
-        assertThat(doc.cumulativeWordUsageCounts.get(0).count("ax"), equalTo(1));
-        assertThat(doc.cumulativeWordUsageCounts.get(1).count("ax"), equalTo(2));
-        assertThat(doc.cumulativeWordUsageCounts.get(6).count("open"), equalTo(2));
-        assertThat(doc.cumulativeWordUsageCounts.get(6).count("house"), equalTo(3));
+        int ax = doc.vocabulary.indexOf("ax");
+        int open = doc.vocabulary.indexOf("open");
+        int house = doc.vocabulary.indexOf("house");
+        assertThat(doc.cumulativeCounts[0].length, equalTo(0));
+        assertThat(doc.cumulativeCounts[1][ax], equalTo(1));
+        assertThat(doc.cumulativeCounts[2][ax], equalTo(2));
+        assertThat(doc.cumulativeCounts[7][open], equalTo(2));
+        assertThat(doc.cumulativeCounts[7][house], equalTo(3));
+    }
+    
+    @Test
+    public void testCountWordsInSegment() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        int[] counts = doc.countWordsInSegment(new Segment(1,4));
+        assertThat(counts.length, equalTo(17));
+        assertThat(counts[doc.vocabulary.indexOf("house")], equalTo(2));
+        assertThat(counts[doc.vocabulary.indexOf("open")], equalTo(2));
+        assertThat(counts[doc.vocabulary.indexOf("lived")], equalTo(0));
+        assertThat(counts[doc.vocabulary.indexOf("children")], equalTo(0));
+        assertThat(Arrays.stream(counts).sum(), equalTo(15));
     }
     
     @Test 
@@ -53,6 +69,17 @@ public class DPDocumentTest {
         assertThat(doc.vocabulary.size(), equalTo(940));
     }
 
+    @Test
+    public void testSparseCountsInSegment() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SparseCounts counts = doc.sparseCountsInSegment(new Segment(1,4));
+        assertThat(counts.K, equalTo(17));
+        assertThat(counts.N, equalTo(15));
+        assertThat(counts.size(), equalTo(13));
+        assertThat(counts.toArray(), equalTo(doc.countWordsInSegment(new Segment(1,4))));
+        assertThat(doc.sparseCountsInSegment(new Segment(5,1)).N, equalTo(0));
+    }
+
     @Test
     public void testCountWordInSegment() {
         DPDocument doc = new DPDocument(SENTENCES);
@@ -88,4 +115,40 @@ public class DPDocumentTest {
         DPDocument doc = new DPDocument(SENTENCES);
         doc.countWordInSegment("house", new Segment(6,2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAppend() {
+        DPDocument doc = new DPDocument(SENTENCES.subList(0, 4));
+        DPDocument appended = doc.append(SENTENCES.subList(4, 7));
+        DPDocument whole = new DPDocument(SENTENCES);
+        assertThat(doc.sentenceCount, equalTo(4));
+        assertThat(appended.sentenceCount, equalTo(7));
+        assertThat(appended.vocabulary, equalTo(whole.vocabulary));
+        assertThat(appended.tokens, equalTo(whole.tokens));
+        assertThat(appended.sentenceOffsets, equalTo(whole.sentenceOffsets));
+        for (int t = 0; t <= 7; t++) {
+            assertThat(appended.cumulativeCounts[t], equalTo(whole.cumulativeCounts[t]));
+        }
+        assertThat(appended.isExtensionOf(doc), equalTo(true));
+        assertThat(appended.isExtensionOf(appended), equalTo(true));
+        assertThat(whole.isExtensionOf(doc), equalTo(false));
+        assertThat(doc.isExtensionOf(appended), equalTo(false));
+    }
+
+    @Test
+    public void testConstructFromWordIDs() {
+        List<String> words = Arrays.asList("children", "house", "ax", "gimme", "lived",
+                "chimney", "sits", "smoke", "doorknobs", "open", "doors", "windows", 
+                "shut", "upstairs", "downstairs", "decided", "let", "unused");
+        int[][] sentences = SENTENCES.stream()
+                .map(sentence -> sentence.stream().mapToInt(words::indexOf).toArray())
+                .toArray(int[][]::new);
+        DPDocument doc = new DPDocument(sentences, words);
+        DPDocument expected = new DPDocument(SENTENCES);
+        assertThat(doc.vocabulary, equalTo(expected.vocabulary));
+        assertThat(doc.tokens, equalTo(expected.tokens));
+        assertThat(doc.sentenceOffsets, equalTo(expected.sentenceOffsets));
+        assertThat(doc.cumulativeCounts, equalTo(expected.cumulativeCounts));
+        assertThat(doc.countWordInSegment("house", new Segment(0,5)), equalTo(3));
+    }
+}
@@ -0,0 +1,84 @@
+package edu.mit.nlp.segmenter.dp;
+
+import in.aesh.segment.Segmentation;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class DPKernelTest {
+
+    private static final List<List<String>> SENTENCES = Arrays.asList(
+            /*0*/Arrays.asList("gimme", "ax", "lived", "house"),
+            /*1*/Arrays.asList("chimney", "sits", "house", "smoke", "gimme", "ax"),
+            /*2*/Arrays.asList("doorknobs", "open", "doors"),
+            /*3*/Arrays.asList("windows", "open", "shut"),
+            /*4*/Arrays.asList("upstairs", "downstairs", "house"),
+            /*5*/Arrays.asList(),
+            /*6*/Arrays.asList("decided", "let", "children"));
+
+    @Test
+    public void testBestScoreMatchesBacktrack() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScores segLLs = new SegmentScores(doc, 7, 0.2);
+        DPKernel kernel = new DPKernel(segLLs, 7, false, null);
+        for (int k = 1; k <= 7; k++) {
+            Segmentation segmentation = kernel.backtrack(k);
+            assertThat(segmentation.size(), equalTo(k));
+            double score = segmentation.stream()
+                    .mapToDouble(s -> segLLs.get(s.start, s.length)).sum();
+            assertThat(kernel.bestScore(k), closeTo(score, 1e-9));
+        }
+        assertThat(kernel.backtrack(7).toList(), contains(1,1,1,1,1,1,1));
+    }
+
+    @Test
+    public void testBacktrackOutsideBand() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        DPKernel kernel = new DPKernel(new SegmentScores(doc, 2, 0.2), 4, false, null);
+        assertThat(kernel.backtrack(3), nullValue());
+        assertThat(kernel.bestScore(3), equalTo(Double.NEGATIVE_INFINITY));
+        assertThat(kernel.backtrack(4).size(), equalTo(4));
+    }
+
+    @Test
+    public void testExtend() {
+        DPDocument doc = new DPDocument(SENTENCES.subList(0, 5));
+        SegmentScores segLLs = new SegmentScores(doc, 3, 0.2);
+        DPKernel kernel = new DPKernel(segLLs, 4, false, null);
+        // the appended empty sentence adds no words to the vocabulary
+        DPDocument appended = doc.append(SENTENCES.subList(5, 6));
+        DPKernel extended = new DPKernel(
+                kernel, new SegmentScores(segLLs, appended, 3), null);
+        DPKernel fresh = new DPKernel(new SegmentScores(appended, 3, 0.2), 4, false, null);
+        for (int k = 1; k <= 4; k++) {
+            assertThat(extended.bestScore(k), equalTo(fresh.bestScore(k)));
+            assertThat(extended.backtrack(k), equalTo(fresh.backtrack(k)));
+        }
+    }
+
+    @Test
+    public void testRange() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScores segLLs = new SegmentScores(doc, 7, 0.2);
+        DPKernel kernel = new DPKernel(segLLs, 1, 6, 2, true, null);
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int bestSplit = -1;
+        for (int split = 2; split < 6; split++) {
+            double score = segLLs.get(1, split - 1) + segLLs.get(split, 6 - split);
+            if (score > bestScore) {
+                bestScore = score;
+                bestSplit = split;
+            }
+        }
+        assertThat(kernel.bestScore(2), closeTo(bestScore, 1e-9));
+        assertThat(kernel.backtrack(2).stream().map(s -> s.start).collect(Collectors.toList()),
+                contains(1, bestSplit));
+        assertThat(kernel.backtrack(2).toList(), contains(bestSplit - 1, 6 - bestSplit));
+    }
+}
@@ -1,13 +1,25 @@
 package edu.mit.nlp.segmenter.dp;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import in.aesh.segment.Main;
+import in.aesh.segment.PreparedTexts;
 import in.aesh.segment.Segmentation;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 import org.junit.Test;
 
@@ -45,6 +57,157 @@ public class DPSegTest {
         segmentations = dpseg.segment(0.2);
         assertThat(segmentations.get(textID).toList(), contains(41,11,25,25,25,25,60));
     }
+
+    @Test
+    public void testSegmentPreparedTexts() throws IOException {
+        PreparedTexts texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadPreparedTexts();
+        String textID = texts.getTextIDs().iterator().next();
+
+        DPSeg dpseg = new DPSeg(texts.getTexts(), texts.getVocabulary(), map(textID, 5));
+        assertThat(dpseg.segment(0.2).get(textID).toList(), contains(41,36,25,49,61));
+    }
+    
+    @Test
+    public void testSegmentTextsWithMaxSegmentLength() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        DPSeg dpseg;
+        Map<String,Segmentation> segmentations;
+
+        // a band wider than the longest segment doesn't change the result
+        dpseg = new DPSeg(texts, map(textID, 5)).setMaxSegmentLengthFactor(2);
+        segmentations = dpseg.segment(0.2);
+        assertThat(segmentations.get(textID).toList(), contains(41,36,25,49,61));
+
+        dpseg = new DPSeg(texts, map(textID, 5)).setMaxSegmentLength(45);
+        segmentations = dpseg.segment(0.2);
+        assertThat(segmentations.get(textID).toList(), everyItem(lessThanOrEqualTo(45)));
+        assertThat(segmentations.get(textID).stream().mapToInt(s -> s.length).sum(),
+                equalTo(212));
+
+        // too narrow to cover the document, so widened to 212/5 rounded up
+        dpseg = new DPSeg(texts, map(textID, 5)).setMaxSegmentLength(10);
+        segmentations = dpseg.segment(0.2);
+        assertThat(segmentations.get(textID).toList(), everyItem(lessThanOrEqualTo(43)));
+    }
+    
+    @Test
+    public void testSegmentTextsInParallel() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        DPSeg dpseg;
+        Map<String,Segmentation> segmentations;
+
+        dpseg = new DPSeg(texts, map(textID, 5)).setParallelThreshold(0);
+        segmentations = dpseg.segment(0.2);
+        assertThat(segmentations.get(textID).toList(), contains(41,36,25,49,61));
+
+        dpseg = new DPSeg(texts, map(textID, 7)).setParallelThreshold(0)
+                .setPool(new ForkJoinPool(3));
+        segmentations = dpseg.segment(0.2);
+        assertThat(segmentations.get(textID).toList(), contains(41,11,25,25,25,25,60));
+    }
+    
+    @Test
+    public void testSegmentAll() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        DPSeg dpseg = new DPSeg(texts, map(textID, 1));
+        Map<Integer,Segmentation> segmentations = dpseg.segmentAll(0.2, 7).get(textID);
+        assertThat(segmentations.keySet(), contains(1,2,3,4,5,6,7));
+        assertThat(segmentations.get(1).toList(), contains(212));
+        assertThat(segmentations.get(3).toList(), contains(77,50,85));
+        assertThat(segmentations.get(5).toList(), contains(41,36,25,49,61));
+        assertThat(segmentations.get(7).toList(), contains(41,11,25,25,25,25,60));
+
+        // with at most 50 sentences per segment, 212 sentences need 5 segments
+        dpseg = new DPSeg(texts, map(textID, 1)).setMaxSegmentLength(50);
+        segmentations = dpseg.segmentAll(0.2, 7).get(textID);
+        assertThat(segmentations.keySet(), contains(5,6,7));
+    }
+    
+    @Test
+    public void testSegmentGrid() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        List<Double> αs = Arrays.asList(0.1, 0.2, 0.5);
+        Map<Double,Map<String,Segmentation>> segmentations = 
+                new DPSeg(texts, map(textID, 5)).segment(αs);
+        assertThat(segmentations.keySet(), contains(0.1, 0.2, 0.5));
+        assertThat(segmentations.get(0.2).get(textID).toList(), contains(41,36,25,49,61));
+        for (double α : αs) {
+            assertThat(segmentations.get(α).get(textID).toList(), equalTo(
+                    new DPSeg(texts, map(textID, 5)).segment(α).get(textID).toList()));
+        }
+    }
+    
+    @Test
+    public void testSegmentPenalized() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        DPSeg dpseg = new DPSeg(texts);
+        Map<String,Segmentation> segmentations;
+
+        // a huge penalty leaves a single segment
+        segmentations = dpseg.segmentPenalized(0.2, 1e6);
+        assertThat(segmentations.get(textID).toList(), contains(212));
+
+        // with no pruning, the penalized optimum for some number of segments
+        // K is the best segmentation into K segments
+        dpseg.setPruningMargin(Double.POSITIVE_INFINITY);
+        segmentations = dpseg.segmentPenalized(0.2, 50);
+        Segmentation penalized = segmentations.get(textID);
+        Segmentation exact = new DPSeg(texts, map(textID, penalized.size()))
+                .segment(0.2).get(textID);
+        assertThat(penalized.toList(), equalTo(exact.toList()));
+
+        // pruning with the default margin agrees with the exact optimum here
+        dpseg.setPruningMargin(20);
+        segmentations = dpseg.segmentPenalized(0.2, 50);
+        assertThat(segmentations.get(textID).toList(), equalTo(penalized.toList()));
+
+        // standard PELT pruning doesn't, but still covers the text
+        dpseg.setPruningMargin(0);
+        segmentations = dpseg.segmentPenalized(0.2, 50);
+        assertThat(segmentations.get(textID).toList(), contains(41,36,22,55,58));
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void testSegmentRequiresSegmentCounts() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        new DPSeg(texts).segment(0.2);
+    }
     
     @Test
     public void testEstimateConcentrationParameter() throws IOException {
@@ -69,7 +232,171 @@ public class DPSegTest {
 
         estimate = dpseg.estimateConcentrationParameter(0.02);
         assertThat(estimate, closeTo(0.5857, 0.0002));
+        // statistics are only kept if the caller asked for them
+        assertThat(dpseg.hasCachedStatistics(), equalTo(false));
+
+        estimate = dpseg.setCacheStatistics(true).estimateConcentrationParameter(0.2);
+        assertThat(estimate, closeTo(0.5857, 0.0002));
+        assertThat(dpseg.hasCachedStatistics(), equalTo(true));
+
+        // statistics too large to cache are never computed
+        dpseg = new DPSeg(texts, map(textID, 4))
+                .setCacheStatistics(true)
+                .setMaxStatisticsSize(0);
+        estimate = dpseg.estimateConcentrationParameter(0.2);
+        assertThat(estimate, closeTo(0.5857, 0.0002));
+        assertThat(dpseg.hasCachedStatistics(), equalTo(false));
     }
-    
-}
 
+    @Test
+    public void testEstimateConcentrationParameters() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+        String copyID = textID + "-copy";
+        texts = ImmutableMap.of(textID, texts.get(textID), copyID, texts.get(textID));
+
+        DPSeg dpseg = new DPSeg(texts, ImmutableMap.of(textID, 4, copyID, 4));
+
+        Map<String,Double> estimates = dpseg.estimateConcentrationParameters(0.2);
+        assertThat(estimates.get(textID), closeTo(0.5857, 0.0002));
+        assertThat(estimates.get(copyID), closeTo(0.5857, 0.0002));
+        assertThat(dpseg.getSegmentations().get(copyID), 
+                equalTo(dpseg.getSegmentations().get(textID)));
+
+        estimates = dpseg.estimateConcentrationParameters(2, 
+                ImmutableMap.of(textID, "group", copyID, "group"));
+        assertThat(estimates.get(textID), closeTo(0.5857, 0.0002));
+        assertThat(estimates.get(copyID), equalTo(estimates.get(textID)));
+    }
+
+    @Test
+    public void testSegmentBest() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        DPSeg dpseg = new DPSeg(texts, map(textID, 5));
+        List<ScoredSegmentation> best = dpseg.segmentBest(0.2, 10).get(textID);
+        assertThat(best.size(), equalTo(10));
+        assertThat(best.get(0).segmentation.toList(), contains(41,36,25,49,61));
+        assertThat(dpseg.getSegmentations().get(textID), equalTo(best.get(0).segmentation));
+        assertThat(new HashSet<>(Lists.transform(best, s -> s.segmentation)).size(), 
+                equalTo(10));
+        for (int rank = 1; rank < best.size(); rank++) {
+            assertThat(best.get(rank).score, lessThanOrEqualTo(best.get(rank-1).score));
+        }
+    }
+
+    @Test
+    public void testBoundaryProbabilities() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        DPSeg dpseg = new DPSeg(texts, map(textID, 5));
+        double[] probabilities = dpseg.boundaryProbabilities(0.2).get(textID);
+        assertThat(dpseg.getSegmentations().get(textID).toList(), 
+                contains(41,36,25,49,61));
+        assertThat(probabilities.length, equalTo(212));
+        assertThat(probabilities[211], equalTo(1.0));
+        // the expected number of boundaries within the text
+        assertThat(Arrays.stream(probabilities, 0, 211).sum(), closeTo(4, 1e-6));
+    }
+
+    @Test
+    public void testAppendSentences() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+        List<List<String>> sentences = texts.get(textID);
+
+        for (int maxLength : new int[]{ 0, 80 }) {
+            DPSeg dpseg = new DPSeg(
+                    ImmutableMap.of(textID, sentences.subList(0, 150)), map(textID, 5))
+                    .setMaxSegmentLength(maxLength)
+                    .setIncremental(true);
+            dpseg.segment(0.2);
+            dpseg.appendSentences(textID, sentences.subList(150, 180));
+            dpseg.segment(0.2);
+            dpseg.appendSentences(textID, sentences.subList(180, 212));
+            assertThat(dpseg.segment(0.2).get(textID).toList(), 
+                    contains(41,36,25,49,61));
+        }
+    }
+
+    @Test
+    public void testAppendSentencesInParallel() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+        List<List<String>> sentences = Lists.newArrayList(Iterables.concat(
+                Collections.nCopies(4, texts.get(textID))));
+        texts = ImmutableMap.of(textID, sentences);
+
+        // the band grows with the text, so rows of the earlier sentences are
+        // cut short and must be scored again on the pool
+        Segmentation expected = new DPSeg(texts, map(textID, 20))
+                .setMaxSegmentLengthFactor(2)
+                .setParallelThreshold(0)
+                .segment(0.2).get(textID);
+        for (int i = 0; i < 8; i++) {
+            DPSeg dpseg = new DPSeg(
+                    ImmutableMap.of(textID, sentences.subList(0, 400)), map(textID, 20))
+                    .setMaxSegmentLengthFactor(2)
+                    .setParallelThreshold(0)
+                    .setIncremental(true);
+            dpseg.segment(0.2);
+            dpseg.appendSentences(textID, sentences.subList(400, 848));
+            assertThat(dpseg.segment(0.2).get(textID), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testSegmentHierarchy() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        String textID = texts.keySet().toArray(new String[]{})[0];
+
+        DPSeg dpseg = new DPSeg(texts, map(textID, 5));
+        List<Segmentation> levels = dpseg.segmentHierarchy(0.2, Arrays.asList(2, 50))
+                .get(textID);
+        assertThat(levels.size(), equalTo(3));
+        assertThat(levels.get(0).toList(), contains(41,36,25,49,61));
+        assertThat(dpseg.getSegmentations().get(textID), equalTo(levels.get(0)));
+        assertThat(levels.get(1).size(), equalTo(10));
+        // segments shorter than 50 sentences are split into single sentences
+        assertThat(levels.get(2).size(), equalTo(212));
+        for (int level = 1; level < levels.size(); level++) {
+            Set<Integer> boundaries = boundariesOf(levels.get(level));
+            assertThat(levels.get(level).toList().stream().mapToInt(i -> i).sum(), 
+                    equalTo(212));
+            assertThat(boundaries.containsAll(boundariesOf(levels.get(level - 1))), 
+                    equalTo(true));
+        }
+    }
+
+    private static Set<Integer> boundariesOf(Segmentation segmentation) {
+        return segmentation.stream()
+                .map(segment -> segment.start + segment.length)
+                .collect(Collectors.toSet());
+    }
+}
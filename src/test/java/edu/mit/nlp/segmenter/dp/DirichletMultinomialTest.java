@@ -0,0 +1,78 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class DirichletMultinomialTest {
+
+    private static final int[] COUNTS = new int[]{ 0, 3, 0, 0, 1, 7, 0, 2, 0, 0 };
+    private static final SparseCounts SPARSE = new SparseCounts(
+            10, new int[]{ 1, 4, 5, 7 }, new int[]{ 3, 1, 7, 2 });
+
+    @Test
+    public void testSparseLogLikelihood() {
+        for (double α : new double[]{ 0.02, 0.2, 2, 20 }) {
+            assertThat(DirichletMultinomial.logLikelihood(α, SPARSE), closeTo(
+                    DirichletMultinomial.logLikelihood(α, COUNTS), 1e-9));
+        }
+    }
+
+    @Test
+    public void testTabulatedLogLikelihood() {
+        for (double α : new double[]{ 0.02, 0.2, 2, 20 }) {
+            DCMTables tables = new DCMTables(α, 10, 13);
+            assertThat(DirichletMultinomial.logLikelihood(SPARSE, tables), closeTo(
+                    DirichletMultinomial.logLikelihood(α, COUNTS), 1e-9));
+        }
+    }
+
+    @Test
+    public void testSparseLogLikelihoodGradient() {
+        for (double α : new double[]{ 0.02, 0.2, 2, 20 }) {
+            assertThat(DirichletMultinomial.logLikelihoodGradient(α, SPARSE), closeTo(
+                    DirichletMultinomial.logLikelihoodGradient(α, COUNTS), 1e-9));
+        }
+    }
+
+    @Test
+    public void testObjective() {
+        SparseCounts other = new SparseCounts(10, new int[]{ 0, 5 }, new int[]{ 1, 1 });
+        DCMObjective objective = new DCMObjective.Builder()
+                .add(SPARSE).add(other).add(SPARSE).build();
+        for (double α : new double[]{ 0.02, 0.2, 2, 20 }) {
+            assertThat(objective.value(α), closeTo(
+                    2 * DirichletMultinomial.logLikelihood(α, SPARSE)
+                    + DirichletMultinomial.logLikelihood(α, other), 1e-9));
+            assertThat(objective.gradient(α), closeTo(
+                    2 * DirichletMultinomial.logLikelihoodGradient(α, SPARSE)
+                    + DirichletMultinomial.logLikelihoodGradient(α, other), 1e-9));
+        }
+    }
+
+    @Test
+    public void testObjectiveCurvature() {
+        DCMObjective objective = new DCMObjective.Builder().add(SPARSE).build();
+        double h = 1e-5;
+        for (double α : new double[]{ 0.02, 0.2, 2, 20 }) {
+            double difference = (objective.gradient(α * Math.exp(h))
+                    - objective.gradient(α * Math.exp(-h))) / (2 * h);
+            assertThat(objective.curvature(α), closeTo(difference, 1e-4));
+        }
+    }
+
+    @Test
+    public void testObjectiveAddAll() {
+        SparseCounts other = new SparseCounts(10, new int[]{ 0, 5 }, new int[]{ 1, 1 });
+        DCMObjective combined = new DCMObjective.Builder()
+                .add(SPARSE)
+                .addAll(new DCMObjective.Builder().add(other).add(SPARSE))
+                .build();
+        DCMObjective objective = new DCMObjective.Builder()
+                .add(SPARSE).add(other).add(SPARSE).build();
+        for (double α : new double[]{ 0.02, 0.2, 2, 20 }) {
+            assertThat(combined.value(α), closeTo(objective.value(α), 1e-9));
+            assertThat(combined.gradient(α), closeTo(objective.gradient(α), 1e-9));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package edu.mit.nlp.segmenter.dp;
+
+import in.aesh.segment.Segmentation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class KBestKernelTest {
+
+    private static final List<List<String>> SENTENCES = Arrays.asList(
+            /*0*/Arrays.asList("gimme", "ax", "lived", "house"),
+            /*1*/Arrays.asList("chimney", "sits", "house", "smoke", "gimme", "ax"),
+            /*2*/Arrays.asList("doorknobs", "open", "doors"),
+            /*3*/Arrays.asList("windows", "open", "shut"),
+            /*4*/Arrays.asList("upstairs", "downstairs", "house"),
+            /*5*/Arrays.asList(),
+            /*6*/Arrays.asList("decided", "let", "children"));
+
+    private static double score(SegmentScores segLLs, Segmentation segmentation) {
+        return segmentation.stream()
+                .mapToDouble(s -> segLLs.get(s.start, s.length)).sum();
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearch() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScores segLLs = new SegmentScores(doc, 7, 0.2);
+        // every segmentation into 3 segments
+        List<Double> scores = new ArrayList<>();
+        for (int a = 1; a < 7; a++) {
+            for (int b = 1; a + b < 7; b++) {
+                scores.add(score(segLLs, new Segmentation(new int[]{ a, b, 7-a-b })));
+            }
+        }
+        scores.sort((x, y) -> Double.compare(y, x));
+
+        KBestKernel kernel = new KBestKernel(segLLs, 3, 20, null);
+        assertThat(kernel.size(), equalTo(15));
+        HashSet<Segmentation> distinct = new HashSet<>();
+        for (int rank = 0; rank < kernel.size(); rank++) {
+            Segmentation segmentation = kernel.backtrack(rank);
+            distinct.add(segmentation);
+            assertThat(kernel.score(rank), closeTo(scores.get(rank), 1e-9));
+            assertThat(score(segLLs, segmentation), closeTo(scores.get(rank), 1e-9));
+        }
+        assertThat(distinct.size(), equalTo(15));
+        assertThat(kernel.backtrack(15), nullValue());
+        assertThat(kernel.score(15), equalTo(Double.NEGATIVE_INFINITY));
+
+        assertThat(kernel.backtrack(0), 
+                equalTo(new DPKernel(segLLs, 3, true, null).backtrack(3)));
+    }
+
+    @Test
+    public void testBand() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScores segLLs = new SegmentScores(doc, 3, 0.2);
+        KBestKernel kernel = new KBestKernel(segLLs, 3, 20, null);
+        // segmentations of 7 sentences into 3 segments of at most 3
+        assertThat(kernel.size(), equalTo(6));
+        for (int rank = 0; rank < kernel.size(); rank++) {
+            assertThat(kernel.backtrack(rank).stream().allMatch(s -> s.length <= 3), 
+                    equalTo(true));
+        }
+    }
+}
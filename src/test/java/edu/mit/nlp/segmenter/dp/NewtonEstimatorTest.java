@@ -0,0 +1,53 @@
+package edu.mit.nlp.segmenter.dp;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class NewtonEstimatorTest {
+
+    private static final SparseCounts SPARSE = new SparseCounts(
+            10, new int[]{ 1, 4, 5, 7 }, new int[]{ 3, 1, 7, 2 });
+    private static final SparseCounts OTHER = new SparseCounts(
+            10, new int[]{ 0, 2, 3, 5 }, new int[]{ 1, 4, 1, 2 });
+
+    @Test
+    public void testMaximize() {
+        DCMObjective objective = new DCMObjective.Builder()
+                .add(SPARSE).add(OTHER).build();
+        NewtonEstimator estimator = new NewtonEstimator();
+        double expected = estimator.maximize(objective, 1).α;
+        assertThat(objective.gradient(expected), closeTo(0, 1e-6));
+        for (double α : new double[]{ 0.001, 0.02, 0.2, 2, 20, 1000 }) {
+            ConcentrationEstimator.Estimate estimate = estimator.maximize(objective, α);
+            assertThat(estimate.α, closeTo(expected, 1e-6));
+            assertThat(estimate.value, closeTo(objective.value(expected), 1e-9));
+            assertThat(estimate.iterations, lessThan(20));
+        }
+    }
+
+    @Test
+    public void testBrentFallback() {
+        // Newton's method overshoots the root of a steep tanh, so this is
+        // only solved after bracketing the root.
+        ConcentrationEstimator.Objective objective = new ConcentrationEstimator.Objective() {
+            @Override
+            public double value(double α) {
+                return -Math.log(Math.cosh(4 * (Math.log(α) - 1))) / 4;
+            }
+            @Override
+            public double gradient(double α) {
+                return -Math.tanh(4 * (Math.log(α) - 1));
+            }
+            @Override
+            public double curvature(double α) {
+                double tanh = Math.tanh(4 * (Math.log(α) - 1));
+                return 4 * (tanh * tanh - 1);
+            }
+        };
+        ConcentrationEstimator.Estimate estimate = 
+                new NewtonEstimator().maximize(objective, Math.exp(1.5));
+        assertThat(Math.log(estimate.α), closeTo(1, 1e-6));
+    }
+}
@@ -0,0 +1,47 @@
+package edu.mit.nlp.segmenter.dp;
+
+import in.aesh.segment.Segment;
+import java.util.Arrays;
+import java.util.List;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class SegmentScorerTest {
+
+    private static final List<List<String>> SENTENCES = Arrays.asList(
+            /*0*/Arrays.asList("gimme", "ax", "lived", "house"),
+            /*1*/Arrays.asList("chimney", "sits", "house", "smoke", "gimme", "ax"),
+            /*2*/Arrays.asList("doorknobs", "open", "doors"),
+            /*3*/Arrays.asList("windows", "open", "shut"),
+            /*4*/Arrays.asList("upstairs", "downstairs", "house"),
+            /*5*/Arrays.asList(),
+            /*6*/Arrays.asList("decided", "let", "children"));
+
+    @Test
+    public void testExtendMatchesLogLikelihood() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        for (double α : new double[]{ 0.02, 0.2, 2 }) {
+            SegmentScorer scorer = new SegmentScorer(doc, α);
+            for (int start = 0; start < doc.sentenceCount; start++) {
+                scorer.reset(start);
+                for (int length = 1; start + length <= doc.sentenceCount; length++) {
+                    double expected = DirichletMultinomial.logLikelihood(α,
+                            doc.countWordsInSegment(new Segment(start, length)));
+                    assertThat(scorer.extend(), closeTo(expected, 1e-9));
+                    assertThat(scorer.length(), equalTo(length));
+                }
+            }
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testExtendRejectsEndOfDocument() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScorer scorer = new SegmentScorer(doc, 0.2);
+        scorer.reset(6);
+        scorer.extend();
+        scorer.extend();
+    }
+}
@@ -0,0 +1,82 @@
+package edu.mit.nlp.segmenter.dp;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class SegmentScoresTest {
+
+    private static final List<List<String>> SENTENCES = Arrays.asList(
+            /*0*/Arrays.asList("gimme", "ax", "lived", "house"),
+            /*1*/Arrays.asList("chimney", "sits", "house", "smoke", "gimme", "ax"),
+            /*2*/Arrays.asList("doorknobs", "open", "doors"),
+            /*3*/Arrays.asList("windows", "open", "shut"),
+            /*4*/Arrays.asList("upstairs", "downstairs", "house"),
+            /*5*/Arrays.asList(),
+            /*6*/Arrays.asList("decided", "let", "children"));
+
+    @Test
+    public void testTriangular() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScores scores = new SegmentScores(doc, 7, 0.2);
+        assertThat(scores.size(), equalTo(7 * 8 / 2));
+        assertThat(scores.rowLength(0), equalTo(7));
+        assertThat(scores.rowLength(6), equalTo(1));
+    }
+
+    @Test
+    public void testBanded() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScores scores = new SegmentScores(doc, 3, 0.2);
+        assertThat(scores.size(), equalTo(3 + 3 + 3 + 3 + 3 + 2 + 1));
+        assertThat(scores.rowLength(4), equalTo(3));
+        assertThat(scores.rowLength(5), equalTo(2));
+    }
+
+    @Test
+    public void testGetMatchesScorer() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentScores scores = new SegmentScores(doc, 4, 0.2);
+        SegmentScorer scorer = new SegmentScorer(doc, 0.2);
+        for (int start = doc.sentenceCount - 1; start >= 0; start--) {
+            scorer.reset(start);
+            for (int length = 1; length <= scores.rowLength(start); length++) {
+                assertThat(scores.get(start, length), equalTo(scorer.extend()));
+            }
+        }
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testGetRejectsLengthOutsideBand() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        new SegmentScores(doc, 3, 0.2).get(0, 4);
+    }
+
+    @Test
+    public void testExtend() {
+        for (int maxLength : new int[]{ 3, 7 }) {
+            // sentence 6 adds words to the vocabulary, but sentence 5 doesn't
+            for (int split : new int[]{ 5, 6 }) {
+                DPDocument doc = new DPDocument(SENTENCES.subList(0, split));
+                SegmentScores previous = new SegmentScores(doc, maxLength, 0.2);
+                for (int start = 0; start < split; start++) {
+                    previous.fill(start);
+                }
+                DPDocument appended = doc.append(SENTENCES.subList(split, 7));
+                SegmentScores extended = new SegmentScores(previous, appended, maxLength);
+                SegmentScores fresh = new SegmentScores(
+                        new DPDocument(SENTENCES), maxLength, 0.2);
+                assertThat(extended.size(), equalTo(fresh.size()));
+                for (int start = 0; start < 7; start++) {
+                    for (int length = 1; length <= fresh.rowLength(start); length++) {
+                        assertThat(extended.get(start, length), 
+                                closeTo(fresh.get(start, length), 1e-9));
+                    }
+                }
+            }
+        }
+    }
+}
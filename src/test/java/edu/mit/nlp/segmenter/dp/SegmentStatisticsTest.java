@@ -0,0 +1,69 @@
+package edu.mit.nlp.segmenter.dp;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class SegmentStatisticsTest {
+
+    private static final List<List<String>> SENTENCES = Arrays.asList(
+            /*0*/Arrays.asList("gimme", "ax", "lived", "house"),
+            /*1*/Arrays.asList("chimney", "sits", "house", "smoke", "gimme", "ax"),
+            /*2*/Arrays.asList("doorknobs", "open", "doors"),
+            /*3*/Arrays.asList("windows", "open", "shut"),
+            /*4*/Arrays.asList("upstairs", "downstairs", "house"),
+            /*5*/Arrays.asList(),
+            /*6*/Arrays.asList("decided", "let", "children", "house", "house"));
+
+    @Test
+    public void testLogLikelihoodMatchesScorer() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentStatistics statistics = new SegmentStatistics(doc, 7, null);
+        assertThat(statistics.maxTokenCount, equalTo(24));
+        for (double α : new double[]{ 0.02, 0.2, 2 }) {
+            DCMTables tables = statistics.tables(α);
+            SegmentScorer scorer = new SegmentScorer(doc, α);
+            for (int start = 0; start < doc.sentenceCount; start++) {
+                scorer.reset(start);
+                for (int length = 1; length <= statistics.rowLength(start); length++) {
+                    assertThat(statistics.logLikelihood(start, length, tables),
+                            closeTo(scorer.extend(), 1e-9));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentScoresFromStatistics() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        SegmentStatistics statistics = new SegmentStatistics(doc, 4, new ForkJoinPool(2));
+        SegmentScores fromStatistics = new SegmentScores(statistics, 3, 0.2);
+        SegmentScores fromWords = new SegmentScores(doc, 3, 0.2);
+        for (int start = 0; start < doc.sentenceCount; start++) {
+            for (int length = 1; length <= fromWords.rowLength(start); length++) {
+                assertThat(fromStatistics.get(start, length),
+                        closeTo(fromWords.get(start, length), 1e-9));
+            }
+        }
+    }
+
+    @Test
+    public void testSizeOf() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        for (int maxLength = 1; maxLength <= 7; maxLength++) {
+            assertThat(SegmentStatistics.sizeOf(doc, maxLength), greaterThanOrEqualTo(
+                    new SegmentStatistics(doc, maxLength, null).size()));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testSegmentScoresRejectsLongerSegments() {
+        DPDocument doc = new DPDocument(SENTENCES);
+        new SegmentScores(new SegmentStatistics(doc, 3, null), 4, 0.2);
+    }
+}
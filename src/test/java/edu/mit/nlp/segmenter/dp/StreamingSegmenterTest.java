@@ -0,0 +1,90 @@
+package edu.mit.nlp.segmenter.dp;
+
+import in.aesh.segment.Main;
+import in.aesh.segment.Segmentation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class StreamingSegmenterTest {
+
+    private static List<List<String>> loadSentences() throws IOException {
+        Map<String,List<List<String>>> texts = new Main(new String[]{
+            "-stop", "src/test/data/STOPWORD.list",
+            "-stem",
+            "-conc", "0.2", // this is just here to make the option parser happy
+            "src/test/data/050.ref" }).loadAndPrepareTexts();
+        return texts.values().iterator().next();
+    }
+
+    private static List<Integer> lengthsOf(List<Integer> boundaries) {
+        List<Integer> lengths = new ArrayList<>();
+        int previous = 0;
+        for (int boundary : boundaries) {
+            lengths.add(boundary - previous);
+            previous = boundary;
+        }
+        return lengths;
+    }
+
+    @Test
+    public void testMatchesPenalizedDP() throws IOException {
+        List<List<String>> sentences = loadSentences();
+        DPDocument doc = new DPDocument(sentences);
+        Segmentation expected = PenalizedDP.bestSegmentationOf(doc, 0.2, 50, 212, 20);
+
+        StreamingSegmenter segmenter = new StreamingSegmenter(
+                0.2, doc.vocabulary.size(), 50, 212, 212, 20);
+        List<Integer> boundaries = new ArrayList<>();
+        for (List<String> sentence : sentences) {
+            boundaries.addAll(segmenter.add(sentence));
+        }
+        boundaries.addAll(segmenter.finish());
+        assertThat(lengthsOf(boundaries), equalTo(expected.toList()));
+    }
+
+    @Test
+    public void testBoundedLagAndWindow() throws IOException {
+        List<List<String>> sentences = loadSentences();
+        int K = new DPDocument(sentences).vocabulary.size();
+        int maxLength = 60;
+        int maxLag = 10;
+
+        StreamingSegmenter segmenter = new StreamingSegmenter(
+                0.2, K, 50, maxLength, maxLag, 20);
+        List<Integer> boundaries = new ArrayList<>();
+        int previous = 0;
+        for (List<String> sentence : sentences) {
+            for (int boundary : segmenter.add(sentence)) {
+                assertThat(previous, lessThan(boundary));
+                previous = boundary;
+                boundaries.add(boundary);
+            }
+            assertThat(segmenter.pending(), lessThanOrEqualTo(maxLag));
+            assertThat(segmenter.windowSize(), lessThan(maxLag + maxLength));
+        }
+        boundaries.addAll(segmenter.finish());
+        assertThat(boundaries.get(boundaries.size() - 1), equalTo(sentences.size()));
+        assertThat(lengthsOf(boundaries).stream().allMatch(length -> length <= maxLength),
+                equalTo(true));
+    }
+
+    @Test
+    public void testSingleSegment() {
+        StreamingSegmenter segmenter = new StreamingSegmenter(0.2, 100, 1e6, 10, 5, 20);
+        List<Integer> boundaries = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boundaries.addAll(segmenter.add(Arrays.asList("a", "b")));
+        }
+        boundaries.addAll(segmenter.finish());
+        assertThat(boundaries, contains(8));
+    }
+}
@@ -0,0 +1,79 @@
+package in.aesh.segment;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import joptsimple.OptionParser;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class BayesSegmenterTest {
+
+    @Test
+    public void testParseGrid() {
+        assertThat(BayesSegmenter.parseGrid(Arrays.asList("0.05", "0.1:0.3:0.1", "1")),
+                contains(0.05, 0.1, 0.2, 0.3, 1.0));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseGridRejectsMalformedRange() {
+        BayesSegmenter.parseGrid(Arrays.asList("0.1:0.3"));
+    }
+
+    @Test
+    public void testSegmentFineGrid() {
+        BayesSegmenter segmenter = new BayesSegmenter();
+        OptionParser parser = new OptionParser();
+        segmenter.addOptions(parser);
+        segmenter.init(parser.parse(
+                "-concentration", "0.1", "-grid", "0.1:0.102:0.0005,1500"));
+        Map<String,List<List<String>>> texts = ImmutableMap.of("text", Arrays.asList(
+                Arrays.asList("a", "b"), Arrays.asList("a", "c"),
+                Arrays.asList("d", "e"), Arrays.asList("d", "f")));
+        Segmentations segmentations = segmenter.segmentTexts(
+                texts, ImmutableMap.of("text", 2), "");
+        assertThat(segmentations.getCoders(), containsInAnyOrder(
+                "bayes-α0.1", "bayes-α0.1005", "bayes-α0.101",
+                "bayes-α0.1015", "bayes-α0.102", "bayes-α1500.0"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testGridRejectsEstimate() {
+        BayesSegmenter segmenter = new BayesSegmenter();
+        OptionParser parser = new OptionParser();
+        segmenter.addOptions(parser);
+        segmenter.init(parser.parse("-concentration", "0.1", "-grid", "0.1,0.2",
+                "-estimate-concentration"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPerTextConcentrationRequiresEstimate() {
+        BayesSegmenter segmenter = new BayesSegmenter();
+        OptionParser parser = new OptionParser();
+        segmenter.addOptions(parser);
+        segmenter.init(parser.parse("-concentration", "0.1", "-per-text-concentration"));
+    }
+
+    @Test
+    public void testGroupsOf() {
+        assertThat(BayesSegmenter.groupsOf(
+                ImmutableSet.of("interviews:U-0005", "interviews:U-0178", "other"),
+                Pattern.compile("U-0(\\d)")),
+                equalTo(ImmutableMap.of(
+                        "interviews:U-0005", "0",
+                        "interviews:U-0178", "1",
+                        "other", "other")));
+        assertThat(BayesSegmenter.groupsOf(
+                ImmutableSet.of("interviews:U-0005", "other"),
+                Pattern.compile("^[^:]+:")),
+                equalTo(ImmutableMap.of(
+                        "interviews:U-0005", "interviews:",
+                        "other", "other")));
+    }
+}
@@ -0,0 +1,92 @@
+package in.aesh.segment;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class PreprocessorTest {
+
+    @Test
+    public void testPrepareLine() {
+        Preprocessor preprocessor = new Preprocessor(
+                new PorterStemmer(), Arrays.asList("the", "a", "'s"));
+        int[] ids = preprocessor.prepareLine("The house's a HOUSE, and houses.");
+        PreparedTexts texts = preprocessor.prepare(ImmutableMap.of());
+        assertThat(texts.getVocabulary(), contains("hous", "and"));
+        assertThat(ids, equalTo(new int[]{ 0, 0, 1, 0 }));
+        assertThat(preprocessor.prepareLine("the a"), equalTo(new int[0]));
+    }
+
+    @Test
+    public void testCacheStatistics() {
+        Preprocessor preprocessor = new Preprocessor(
+                new PorterStemmer(), Arrays.asList("the", "a", "'s"));
+        preprocessor.prepareLine("the house the house");
+        assertThat(preprocessor.getStatistics().requestCount(), equalTo(4L));
+        assertThat(preprocessor.getStatistics().hitCount(), equalTo(2L));
+        assertThat(preprocessor.cacheSize(), equalTo(2L));
+    }
+
+    @Test
+    public void testMaximumSize() {
+        String line = "gimme the ax 's mother lived in a house where everything is the same";
+        Preprocessor bounded = new Preprocessor(
+                new PorterStemmer(), Arrays.asList("the", "a", "'s"), 2);
+        Preprocessor unbounded = new Preprocessor(
+                new PorterStemmer(), Arrays.asList("the", "a", "'s"));
+        for (int i = 0; i < 2; i++) {
+            assertThat(bounded.prepareLine(line), equalTo(unbounded.prepareLine(line)));
+        }
+        assertThat(bounded.prepare(ImmutableMap.of()).getVocabulary(),
+                equalTo(unbounded.prepare(ImmutableMap.of()).getVocabulary()));
+        assertThat(bounded.cacheSize(), lessThanOrEqualTo(2L));
+    }
+
+    @Test
+    public void testPrepareMatchesWordPipeline() throws IOException {
+        Stemmer stemmer = new PorterStemmer();
+        List<String> stopwords = stemmer.stemWords(
+                Utils.loadWords(new File("src/test/data/STOPWORD.list")));
+        Map.Entry<String,List<String>> text = Utils.loadText(new File("src/test/data/050.ref"));
+        List<List<String>> expected = text.getValue().stream()
+                .map(Utils::clean)
+                .map(Splitter.on(' ')::splitToList)
+                .map(stemmer::stemWords)
+                .map(words -> Utils.removeStopwords(words, stopwords))
+                .collect(Utils.toImmutableList());
+        PreparedTexts texts = new Preprocessor(stemmer, stopwords)
+                .prepare(ImmutableMap.of(text.getKey(), text.getValue()));
+        assertThat(texts.asWords().get(text.getKey()), equalTo(expected));
+    }
+
+    @Test
+    public void testPrepareFiles() throws IOException {
+        List<File> files = Utils.stream(Files.newDirectoryStream(
+                FileSystems.getDefault().getPath("src/test/data/txt"), "U-*.txt"))
+                .map(Path::toFile)
+                .collect(Utils.toImmutableList());
+        Function<File,String> file2id = File::getName;
+        // texts are prepared in parallel, so the stemmer must be thread-safe
+        Stemmer stemmer = new ThreadLocalStemmer(PorterStemmer::new);
+        PreparedTexts texts = new Preprocessor(stemmer, Arrays.asList("the"))
+                .prepare(files, file2id, 2);
+        PreparedTexts expected = new Preprocessor(stemmer, Arrays.asList("the"))
+                .prepare(Utils.loadTexts(files, file2id));
+        assertThat(texts.getTextIDs(), contains(files.stream()
+                .map(file2id).toArray(String[]::new)));
+        assertThat(texts.asWords(), equalTo(expected.asWords()));
+    }
+}
@@ -6,6 +6,7 @@ import com.google.gson.Gson;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -35,4 +36,30 @@ public class SegmentationsTest {
                 .get("interviews:U-0005").get("annotators:docsouth");
         assertThat(segmentation.size(), equalTo(11));
     }
+
+    @Test
+    public void testMetadata() {
+        Segmentations segmentations = new Segmentations.Builder()
+                .add("a", ImmutableMap.of(
+                        "x", new Segmentation(new int[]{ 1, 2 }),
+                        "y", new Segmentation(new int[]{ 3 })))
+                .addMetadata("a", "concentration", ImmutableMap.of("x", 0.5, "y", 2.0))
+                .build("a");
+        assertThat(segmentations.getMetadata("x", "a"), 
+                equalTo(ImmutableMap.of("concentration", "0.5")));
+        assertThat(segmentations.getMetadata("x", "b").isEmpty(), equalTo(true));
+
+        Gson gson = new Gson();
+        Segmentations merged = gson.fromJson(gson.toJson(segmentations), Segmentations.class)
+                .merge(new Segmentations.Builder()
+                        .add("b", ImmutableMap.of(
+                                "x", new Segmentation(new int[]{ 3 }),
+                                "y", new Segmentation(new int[]{ 3 })))
+                        .build("b"));
+        assertThat(merged.getMetadata("y", "a"), 
+                equalTo(ImmutableMap.of("concentration", "2.0")));
+        assertThat(merged.getMetadata("y", "b").isEmpty(), equalTo(true));
+        assertThat(gson.toJson(Segmentations.empty(merged.getItemIDs())).contains("metadata"),
+                equalTo(false));
+    }
 }
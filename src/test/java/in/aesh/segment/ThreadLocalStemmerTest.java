@@ -0,0 +1,27 @@
+package in.aesh.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class ThreadLocalStemmerTest {
+
+    @Test
+    public void testStemWordsInParallel() throws IOException {
+        List<String> words = Utils.loadText(new File("src/test/data/050.ref"))
+                .getValue().stream()
+                .flatMap(line -> Utils.tokenize(line).stream())
+                .collect(Collectors.toList());
+        List<String> expected = new PorterStemmer().stemWords(words);
+        ThreadLocalStemmer stemmer = new ThreadLocalStemmer(PorterStemmer::new);
+        for (int i = 0; i < 4; i++) {
+            assertThat(words.parallelStream()
+                    .map(stemmer::stemWord)
+                    .collect(Collectors.toList()), equalTo(expected));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package in.aesh.segment;
 
+import com.google.common.base.Splitter;
 import in.aesh.segment.Utils;
 import java.io.File;
 import java.io.IOException;
@@ -7,6 +8,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
@@ -14,6 +16,9 @@ import static org.junit.Assert.assertThat;
 import org.junit.Test;
 
 public class UtilsTest {
+
+    private static final Splitter SPLITTER = Splitter.on(' ');
+
     @Test
     public void testLoadText() throws IOException {
         File file = new File("src/test/data/txt/U-0005.txt");
@@ -52,4 +57,30 @@ public class UtilsTest {
         assertThat(Utils.clean("Sam's house"), equalTo("sam 's house"));
         assertThat(Utils.clean("ménièr"), equalTo("ménièr"));
     }
+
+    @Test
+    public void testTokenize() throws IOException {
+        for (String s : new String[]{ "Sam Smith", "~`!@#$%^&*()+={}[]|\\:;\"'<>,.?/",
+                " foo    bar ", "foo\tbar", "Sam's house", "ménièr", "", "  \t ", "?!", 
+                "a'b'c'd", "rock 'n' roll", "don't.'s", "é'a", "İSTANBUL", "ΟΔΥΣΣΕΥΣ",
+                "foo\u2003bar\u00a0baz" }) {
+            assertThat(s, Utils.tokenize(s), equalTo(SPLITTER.splitToList(Utils.clean(s))));
+        }
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr"));
+            assertThat(Utils.tokenize("DIŞ KAPI"), 
+                    equalTo(SPLITTER.splitToList(Utils.clean("DIŞ KAPI"))));
+            assertThat(Utils.tokenize("Isaac"), contains("ısaac"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+        Path dir = FileSystems.getDefault().getPath("src/test/data/txt");
+        for (Path path : Files.newDirectoryStream(dir, "U-*.txt")) {
+            for (String line : Files.readAllLines(path)) {
+                assertThat(line, Utils.tokenize(line), 
+                        equalTo(SPLITTER.splitToList(Utils.clean(line))));
+            }
+        }
+    }
 }